@@ -1,31 +1,70 @@
 import information.retrieval.WordList;
+import information.retrieval.index.AutocompleteIndex;
+import information.retrieval.index.DocumentStore;
+import information.retrieval.index.IndexJournal;
+import information.retrieval.index.IndexStorage;
+import information.retrieval.index.OffHeapIndex;
+import information.retrieval.object.ObjectResources;
 import information.retrieval.object.ObjectSearchResult;
 import information.retrieval.utility.ResourceManager;
+import information.retrieval.utility.ResultCursor;
 import information.retrieval.utility.Searching;
+import information.retrieval.utility.SnippetGenerator;
 import information.retrieval.utility.WordProcessor;
 import jsastrawi.morphology.Lemmatizer;
-import opennlp.tools.tokenize.Tokenizer;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
-import java.util.Map;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class GuiApp extends JFrame {
 
     private static final Logger logger = Logger.getLogger(GuiApp.class.getName());
+    private static final int SEARCH_DELAY_MS = 300;
     private static Searching searching;
+    private static DocumentStore documentStore;
+    private static SnippetGenerator snippetGenerator;
+    private static AutocompleteIndex autocomplete;
+    private static IndexJournal journal;
+
+    private final ExecutorService pageLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "snippet-page-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private JTextField keywordField;
+    private JPopupMenu suggestionPopup;
     private JComboBox<String> searchOptionComboBox;
+    private JTable resultTable;
+    private JLabel statusLabel;
+    private Timer searchDelay;
+    private SwingWorker<ResultCursor, Void> currentSearch;
+    private SearchResultTableModel currentModel;
+    private String[] currentTerms = new String[0];
 
     public GuiApp() {
         setTitle("Inverted Index Search");
-        setSize(600, 400);
+        setSize(900, 400);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
@@ -34,9 +73,11 @@ public class GuiApp extends JFrame {
 
         JPanel keywordPanel = createKeywordPanel();
         JScrollPane resultScrollPane = createResultScrollPane();
+        statusLabel = new JLabel(" ");
 
         container.add(keywordPanel, BorderLayout.NORTH);
         container.add(resultScrollPane, BorderLayout.CENTER);
+        container.add(statusLabel, BorderLayout.SOUTH);
     }
 
     private JPanel createKeywordPanel() {
@@ -64,7 +105,7 @@ public class GuiApp extends JFrame {
         gbc.gridy = 1;
         gbc.weightx = 0;
         gbc.fill = GridBagConstraints.NONE;
-        searchOptionComboBox = new JComboBox<>(new String[]{"Advanced", "AND", "OR", "Single"});
+        searchOptionComboBox = new JComboBox<>(new String[]{"Advanced", "AND", "OR", "Cosine", "Single"});
         keywordPanel.add(searchOptionComboBox, gbc);
 
         gbc.gridx = 0;
@@ -78,13 +119,93 @@ public class GuiApp extends JFrame {
         searchButton.addActionListener(e -> searchDocuments(keywordField.getText(),
                 (String) searchOptionComboBox.getSelectedItem()));
 
+        // Search as the user types, once typing pauses
+        searchDelay = new Timer(SEARCH_DELAY_MS, e -> {
+            if (!keywordField.getText().isBlank()) {
+                searchDocuments(keywordField.getText(), (String) searchOptionComboBox.getSelectedItem());
+            }
+        });
+        searchDelay.setRepeats(false);
+        keywordField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDelay.restart();
+                SwingUtilities.invokeLater(() -> showSuggestions());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDelay.restart();
+                SwingUtilities.invokeLater(() -> showSuggestions());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                searchDelay.restart();
+            }
+        });
+
+        // Suggest completions for the term being typed; the popup never takes focus from the field
+        suggestionPopup = new JPopupMenu();
+        suggestionPopup.setFocusable(false);
+        keywordField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE || e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    suggestionPopup.setVisible(false);
+                }
+            }
+        });
+
         return keywordPanel;
     }
 
+    /**
+     * Show the completions of the last term in the keyword field, or hide the popup if there are none.
+     */
+    private void showSuggestions() {
+        String text = keywordField.getText();
+        int start = Math.max(text.lastIndexOf(' '), text.lastIndexOf(',')) + 1;
+        String prefix = text.substring(start).toLowerCase(Locale.ROOT);
+        List<String> suggestions = autocomplete == null || prefix.isEmpty()
+                ? List.of() : autocomplete.suggest(prefix, AutocompleteIndex.TOP_K);
+
+        suggestionPopup.setVisible(false);
+        suggestionPopup.removeAll();
+        if (suggestions.isEmpty() || (suggestions.size() == 1 && suggestions.get(0).equals(prefix))) {
+            return;
+        }
+        for (String suggestion : suggestions) {
+            JMenuItem item = new JMenuItem(suggestion);
+            item.addActionListener(e -> {
+                keywordField.setText(text.substring(0, start) + suggestion);
+                suggestionPopup.setVisible(false);
+                keywordField.requestFocusInWindow();
+            });
+            suggestionPopup.add(item);
+        }
+        if (keywordField.isShowing()) {
+            suggestionPopup.show(keywordField, 0, keywordField.getHeight());
+            keywordField.requestFocusInWindow();
+        }
+    }
+
     private JScrollPane createResultScrollPane() {
-        String[] columnNames = {"Document", "TF-IDF", "Terms"};
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
-        JTable resultTable = new JTable(tableModel);
+        resultTable = new JTable();
+        showModel(SearchResultTableModel.message("", ""));
+
+        // Double-click a result to search for documents like it
+        resultTable.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() != 2) return;
+                int row = resultTable.rowAtPoint(e.getPoint());
+                ObjectSearchResult result = row < 0 ? null : currentModel.getResultAt(row);
+                if (result != null) {
+                    searchMoreLikeThis(result);
+                }
+            }
+        });
         return new JScrollPane(resultTable);
     }
 
@@ -97,25 +218,64 @@ public class GuiApp extends JFrame {
             return;
         }
 
-        String tokenizerPath = config.getProperty("tokenizer.path");
-        String stopwordsPath = config.getProperty("stopwords.path");
         String documentsPath = config.getProperty("documents.path");
 
         try {
-            Tokenizer tokenizer = resourceManager.initializeTokenizer(tokenizerPath);
-            Lemmatizer lemmatizer = resourceManager.initializeLemmatizer();
-            Set<String> stopwords = resourceManager.loadStopWords(stopwordsPath);
+            ObjectResources resources = resourceManager.initializeResources(config);
 
-            if (tokenizer == null || lemmatizer == null || stopwords == null) {
+            if (resources == null) {
                 throw new Exception("Failed to initialize required resources.");
             }
 
-            WordProcessor wordProcessor = new WordProcessor(tokenizer, lemmatizer, stopwords);
+            Lemmatizer lemmatizer = resources.getLemmatizer();
+            WordProcessor wordProcessor = new WordProcessor(resources::createTokenizer, lemmatizer, resources.getStopwords());
             WordList wordList = new WordList();
-            wordProcessor.processDocuments(documentsPath, wordList);
+            String storePath = config.getProperty("store.path");
+            String corpusPath = config.getProperty("corpus.path");
+            String journalPath = config.getProperty("journal.path");
+            if (journalPath != null) {
+                // Restore the last saved state and recent changes; the journal stays open while the GUI runs
+                journal = IndexJournal.open(Paths.get(journalPath));
+                wordList = journal.getWordList();
+            }
+            boolean restored = wordList.getDocumentCount() > 0;
+            if (restored) {
+                if (storePath != null && Files.exists(Paths.get(storePath))) {
+                    documentStore = DocumentStore.open(Paths.get(storePath));
+                    snippetGenerator = new SnippetGenerator(resources.getTokenizer(), lemmatizer, 24);
+                }
+            } else if (storePath == null) {
+                if (corpusPath == null) {
+                    wordProcessor.processDocuments(documentsPath, wordList);
+                } else {
+                    wordProcessor.processCorpus(corpusPath, wordList, null, MainApp.ingestThreads(config));
+                }
+            } else {
+                try (DocumentStore.Writer storeWriter = new DocumentStore.Writer(Paths.get(storePath))) {
+                    if (corpusPath == null) {
+                        wordProcessor.processDocuments(documentsPath, wordList, storeWriter);
+                    } else {
+                        wordProcessor.processCorpus(corpusPath, wordList, storeWriter, MainApp.ingestThreads(config));
+                    }
+                }
+                documentStore = DocumentStore.open(Paths.get(storePath));
+                snippetGenerator = new SnippetGenerator(resources.getTokenizer(), lemmatizer, 24);
+            }
+            if (journal != null && !restored) {
+                journal.checkpoint();
+            }
             wordList.calculateTfidf();
+            autocomplete = AutocompleteIndex.build(wordList);
+            wordList.addDictionaryListener(autocomplete);
 
-            searching = new Searching(wordList, lemmatizer);
+            IndexStorage index = wordList;
+            if ("offheap".equals(config.getProperty("index.storage"))) {
+                Path indexPath = Paths.get(config.getProperty("index.path"));
+                OffHeapIndex.write(wordList, indexPath);
+                index = OffHeapIndex.open(indexPath);
+            }
+
+            searching = new Searching(index, lemmatizer);
             logger.log(Level.INFO, "Application initialized successfully.");
 
             // Start GUI
@@ -126,52 +286,133 @@ public class GuiApp extends JFrame {
         }
     }
 
+    /**
+     * Run a search on a background thread. A search still running for an older query is cancelled, and its
+     * results are dropped if they arrive anyway.
+     */
     private void searchDocuments(String keywords, String searchOption) {
-        if (keywords.isEmpty() || searching == null) {
+        searchDelay.stop();
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+        }
+
+        if (keywords.isBlank() || searching == null) {
             showError("Please process documents first or enter a valid keyword.");
             return;
         }
 
-        Map<String, ObjectSearchResult> results;
-        switch (searchOption) {
-            case "Advanced":
-                results = searching.searchAdvanced(keywords.split("[,\\s]+"));
-                break;
-            case "AND":
-                results = searching.searchAND(keywords.split("[,\\s]+"));
-                break;
-            case "OR":
-                results = searching.searchOR(keywords.split("[,\\s]+"));
-                break;
-            case "Single":
-                results = searching.searchSingleTerm(keywords);
-                break;
-            default:
-                showError("Invalid search option selected.");
-                return;
+        String trimmed = keywords.trim();
+        String[] terms = "Single".equals(searchOption) ? new String[]{trimmed} : trimmed.split("[,\\s]+");
+        runSearch(trimmed, terms, () -> {
+            switch (searchOption) {
+                case "Advanced":
+                    return searching.searchAdvanced(terms);
+                case "AND":
+                    return searchExcluding(terms);
+                case "OR":
+                    return searching.searchOR(terms);
+                case "Cosine":
+                    return searching.searchCosine(terms);
+                case "Single":
+                    return searching.searchSingleTerm(trimmed);
+                default:
+                    throw new IllegalArgumentException("Invalid search option selected.");
+            }
+        });
+    }
+
+    /**
+     * AND search in which terms written with a leading '-' exclude the documents containing them.
+     */
+    private static ResultCursor searchExcluding(String[] terms) {
+        List<String> included = new ArrayList<>();
+        List<String> excluded = new ArrayList<>();
+        for (String term : terms) {
+            if (term.startsWith("-") && term.length() > 1) {
+                excluded.add(term.substring(1));
+            } else {
+                included.add(term);
+            }
+        }
+        if (included.isEmpty()) {
+            return ResultCursor.empty();
         }
+        return excluded.isEmpty() ? searching.searchAND(terms)
+                : searching.searchNOT(included.toArray(new String[0]), excluded.toArray(new String[0]));
+    }
 
-        displaySearchResults(results);
+    /**
+     * Search for documents similar to a result, keeping the snippet highlights of the query that found it.
+     */
+    private void searchMoreLikeThis(ObjectSearchResult result) {
+        searchDelay.stop();
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+        }
+        runSearch("like " + result.getDocumentId(), currentTerms,
+                () -> searching.searchMoreLikeThis(result.getDocument()));
     }
 
-    private void displaySearchResults(Map<String, ObjectSearchResult> results) {
-        DefaultTableModel tableModel = (DefaultTableModel) ((JTable) ((JScrollPane) getContentPane()
-                .getComponent(1)).getViewport().getView()).getModel();
-        tableModel.setRowCount(0);
+    private void runSearch(String description, String[] terms, Supplier<ResultCursor> search) {
+        currentTerms = terms;
+        long startTime = System.nanoTime();
+        statusLabel.setText("Searching...");
 
+        SwingWorker<ResultCursor, Void> worker = new SwingWorker<>() {
+            @Override
+            protected ResultCursor doInBackground() {
+                ResultCursor results = search.get();
+                // Select the first page here so the table can show it without touching the whole result set
+                results.page(0, SearchResultTableModel.PAGE_SIZE);
+                return results;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || currentSearch != this) {
+                    return;
+                }
+                try {
+                    ResultCursor results = get();
+                    displaySearchResults(results, terms);
+                    statusLabel.setText(results.size() + " results for " + description + " in "
+                            + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.log(Level.SEVERE, "Error searching for: " + description, e.getCause());
+                    showError(e.getCause().getMessage());
+                }
+            }
+        };
+        currentSearch = worker;
+        worker.execute();
+    }
+
+    private void displaySearchResults(ResultCursor results, String[] terms) {
         if (results == null || results.isEmpty()) {
-            tableModel.addRow(new Object[]{"No results", "No snippets available", ""});
+            showModel(SearchResultTableModel.message("No results", "No snippets available"));
         } else {
-            results.forEach((docId, result) -> tableModel.addRow(new Object[]{
-                    docId, result.getCumulativeTfIdf(), result.getMatchedTermsCount()
-            }));
+            Function<ObjectSearchResult, String> snippetSource = documentStore == null ? null : result -> createSnippet(result, terms);
+            showModel(new SearchResultTableModel(results, snippetSource, pageLoader));
         }
     }
 
+    private String createSnippet(ObjectSearchResult result, String[] terms) {
+        return "<html>" + snippetGenerator.generate(documentStore.getText(result.getDocument()), terms) + "</html>";
+    }
+
     private void showError(String message) {
-        DefaultTableModel tableModel = (DefaultTableModel) ((JTable) ((JScrollPane) getContentPane()
-                .getComponent(1)).getViewport().getView()).getModel();
-        tableModel.setRowCount(0);
-        tableModel.addRow(new Object[]{"Error", message, ""});
+        showModel(SearchResultTableModel.message("Error", message));
+        statusLabel.setText(" ");
+    }
+
+    private void showModel(SearchResultTableModel model) {
+        if (currentModel != null) {
+            currentModel.dispose();
+        }
+        currentModel = model;
+        resultTable.setModel(model);
+        resultTable.getColumnModel().getColumn(3).setPreferredWidth(500);
     }
 }
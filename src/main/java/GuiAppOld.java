@@ -1,6 +1,7 @@
 import information.retrieval.*;
 import information.retrieval.object.ObjectSearchResult;
 import information.retrieval.utility.ResourceManager;
+import information.retrieval.utility.ResultCursor;
 import information.retrieval.utility.Searching;
 import information.retrieval.utility.WordProcessor;
 import jsastrawi.morphology.*;
@@ -148,7 +149,7 @@ public class GuiAppOld extends JFrame {
      */
     private void searchDocuments(String keywords, String searchOption, DefaultTableModel tableModel) {
         if (!keywords.isEmpty() && searching != null) {
-            Map<String, ObjectSearchResult> results = null;
+            ResultCursor results = null;
             if ("Advanced".equals(searchOption)) {
                 results = searching.searchAdvanced(keywords.split(","));
             } else if ("AND".equals(searchOption)) {
@@ -161,7 +162,8 @@ public class GuiAppOld extends JFrame {
 
             tableModel.setRowCount(0); // Clear previous results
             if (results != null && !results.isEmpty()) {
-                results.forEach((docId, result) -> {
+                results.forEach(result -> {
+                    String docId = result.getDocumentId();
                     // Extract the cumulative TF-IDF and matched terms
                     double tfIdf = result.getCumulativeTfIdf(); // Assuming this method exists in ObjectSearchResult
                     int matchedTerms = result.getMatchedTermsCount(); // Assuming this method exists in ObjectSearchResult
@@ -0,0 +1,335 @@
+import information.retrieval.object.ObjectCollection;
+import information.retrieval.object.ObjectResources;
+import information.retrieval.utility.LatencyHistogram;
+import information.retrieval.utility.ResourceManager;
+import information.retrieval.utility.ResultCursor;
+import information.retrieval.utility.Searching;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a query log against the index and reports throughput and latency percentiles.
+ * <p>
+ * The log holds one query per line: a mode ({@code single}, {@code and}, {@code or}, {@code advanced} or
+ * {@code cosine}), a tab, then the terms separated by spaces or commas. Blank lines and lines starting with
+ * {@code #} are skipped. Queries are replayed in order, wrapping around until the run ends.
+ * <p>
+ * Usage: {@code LoadTestApp <query log> [--rate <queries/s>] [--clients <n>] [--duration <s>] [--warmup <s>]
+ * [--expected-interval-ms <ms>] [--deadline-ms <ms>] [--collection <name>]}
+ * <ul>
+ *     <li>With {@code --rate}, queries are scheduled at that fixed rate and served by {@code --clients} threads.
+ *     Latency is measured from when a query was scheduled, not when a thread got to it, so queueing behind slow
+ *     queries is counted (open loop).</li>
+ *     <li>Without it, each of {@code --clients} threads sends its next query as soon as the previous one returns
+ *     (closed loop). Such clients send fewer queries while the engine is slow, so the report adds a
+ *     coordinated-omission corrected view assuming queries were due every {@code --expected-interval-ms}, or
+ *     every mean latency if not given.</li>
+ * </ul>
+ * With {@code --deadline-ms}, each query gets that long from when it was due (open loop) or sent (closed loop)
+ * and returns partial results once it runs out; the report counts the queries that timed out.
+ * Queries run against the first configured collection unless {@code --collection} names another.
+ */
+public class LoadTestApp {
+
+    private static final Logger logger = Logger.getLogger(LoadTestApp.class.getName());
+    private static final int PAGE_SIZE = 10;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: LoadTestApp <query log> [--rate <queries/s>] [--clients <n>] [--duration <s>]"
+                    + " [--warmup <s>] [--expected-interval-ms <ms>] [--deadline-ms <ms>] [--collection <name>]");
+            return;
+        }
+
+        double rate = 0;
+        int clients = 4;
+        long durationNanos = TimeUnit.SECONDS.toNanos(30);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(5);
+        long expectedIntervalNanos = 0;
+        long deadlineNanos = 0;
+        String collectionName = null;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--rate":
+                        rate = Double.parseDouble(value);
+                        break;
+                    case "--clients":
+                        clients = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        durationNanos = (long) (Double.parseDouble(value) * 1e9);
+                        break;
+                    case "--warmup":
+                        warmupNanos = (long) (Double.parseDouble(value) * 1e9);
+                        break;
+                    case "--expected-interval-ms":
+                        expectedIntervalNanos = (long) (Double.parseDouble(value) * 1e6);
+                        break;
+                    case "--deadline-ms":
+                        deadlineNanos = (long) (Double.parseDouble(value) * 1e6);
+                        break;
+                    case "--collection":
+                        collectionName = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Invalid arguments: " + e.getMessage());
+            return;
+        }
+
+        List<Query> queries = readQueryLog(args[0]);
+        if (queries.isEmpty()) {
+            logger.log(Level.SEVERE, "No queries found in: " + args[0]);
+            return;
+        }
+
+        ResourceManager resourceManager = new ResourceManager();
+        Properties config = resourceManager.loadConfiguration("src/main/resources/config.properties");
+        ObjectResources resources = resourceManager.initializeResources(config);
+        if (resources == null) {
+            logger.log(Level.SEVERE, "Error initializing resources.");
+            return;
+        }
+        List<String> names = resourceManager.getCollectionNames(config);
+        if (collectionName == null) {
+            collectionName = names.get(0);
+        } else if (!names.contains(collectionName)) {
+            logger.log(Level.SEVERE, "Unknown collection: " + collectionName);
+            return;
+        }
+        try (ObjectCollection collection = MainApp.loadCollection(collectionName,
+                resourceManager.getCollectionConfiguration(config, collectionName), resources)) {
+            replay(collection.getSearching(), queries, rate, clients, durationNanos, warmupNanos,
+                    expectedIntervalNanos, deadlineNanos);
+        }
+    }
+
+    /**
+     * Warm up, then replay the queries and print the latency report.
+     */
+    private static void replay(Searching searching, List<Query> queries, double rate, int clients, long durationNanos,
+                               long warmupNanos, long expectedIntervalNanos, long deadlineNanos) {
+        if (warmupNanos > 0) {
+            System.out.printf("Warming up for %.1f s...%n", warmupNanos / 1e9);
+            runClosedLoop(searching, queries, clients, warmupNanos, deadlineNanos);
+        }
+
+        if (rate > 0) {
+            System.out.printf("Replaying %d queries at %.1f queries/s with %d threads for %.1f s%n",
+                    queries.size(), rate, clients, durationNanos / 1e9);
+            Run run = runFixedRate(searching, queries, clients, rate, durationNanos, deadlineNanos);
+            printReport(run, "Response time (from schedule)", run.responseTimes);
+            printReport(run, "Service time", run.serviceTimes);
+        } else {
+            System.out.printf("Replaying %d queries with %d closed-loop clients for %.1f s%n",
+                    queries.size(), clients, durationNanos / 1e9);
+            Run run = runClosedLoop(searching, queries, clients, durationNanos, deadlineNanos);
+            long interval = expectedIntervalNanos > 0 ? expectedIntervalNanos : (long) run.serviceTimes.getMean();
+            printReport(run, "Service time", run.serviceTimes);
+            printReport(run, String.format("Corrected (%.3f ms interval)", interval / 1e6),
+                    run.serviceTimes.correctedCopy(interval));
+        }
+    }
+
+
+    /**
+     * Each client sends its next query as soon as the previous one completes.
+     */
+    private static Run runClosedLoop(Searching searching, List<Query> queries, int clients, long durationNanos,
+                                     long deadlineNanos) {
+        AtomicLong next = new AtomicLong();
+        long end = System.nanoTime() + durationNanos;
+        return runClients(clients, (histograms, timedOut) -> {
+            while (true) {
+                long start = System.nanoTime();
+                if (start >= end) break;
+                if (execute(searching, queries.get((int) (next.getAndIncrement() % queries.size())),
+                        deadlineNanos)) {
+                    timedOut.incrementAndGet();
+                }
+                long latency = System.nanoTime() - start;
+                histograms[0].record(latency);
+                histograms[1].record(latency);
+            }
+        });
+    }
+
+    /**
+     * Queries are due at a fixed rate; any free client takes the next one when it is due.
+     */
+    private static Run runFixedRate(Searching searching, List<Query> queries, int clients, double rate,
+                                    long durationNanos, long deadlineNanos) {
+        AtomicLong next = new AtomicLong();
+        long intervalNanos = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        return runClients(clients, (histograms, timedOut) -> {
+            while (true) {
+                long sequence = next.getAndIncrement();
+                long scheduled = start + sequence * intervalNanos;
+                if (scheduled >= end) break;
+                long now;
+                while ((now = System.nanoTime()) < scheduled) {
+                    LockSupport.parkNanos(scheduled - now);
+                }
+                long remaining = deadlineNanos > 0 ? Math.max(1, scheduled + deadlineNanos - now) : 0;
+                if (execute(searching, queries.get((int) (sequence % queries.size())), remaining)) {
+                    timedOut.incrementAndGet();
+                }
+                long done = System.nanoTime();
+                histograms[0].record(done - scheduled);
+                histograms[1].record(done - now);
+            }
+        });
+    }
+
+    private static Run runClients(int clients, ClientLoop loop) {
+        LatencyHistogram[][] perClient = new LatencyHistogram[clients][];
+        Thread[] threads = new Thread[clients];
+        Run run = new Run();
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            LatencyHistogram[] histograms = {new LatencyHistogram(), new LatencyHistogram()};
+            perClient[i] = histograms;
+            threads[i] = new Thread(() -> loop.run(histograms, run.timedOut), "load-client-" + i);
+            threads[i].start();
+        }
+
+        for (int i = 0; i < clients; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            run.responseTimes.add(perClient[i][0]);
+            run.serviceTimes.add(perClient[i][1]);
+        }
+        run.elapsedNanos = System.nanoTime() - start;
+        return run;
+    }
+
+    /**
+     * Run a query and read its first page.
+     *
+     * @param deadlineNanos time the query may take, or 0 for no deadline.
+     * @return true if the query ran out of time.
+     */
+    private static boolean execute(Searching searching, Query query, long deadlineNanos) {
+        ResultCursor results;
+        if (deadlineNanos > 0) {
+            // Run on the client thread itself; the deadline is what this measures, not the hand-off
+            results = searching.searchAsync(s -> search(s, query), deadlineNanos, TimeUnit.NANOSECONDS,
+                    Runnable::run).join();
+        } else {
+            results = search(searching, query);
+        }
+        results.page(0, PAGE_SIZE);
+        return results.isTimedOut();
+    }
+
+    private static ResultCursor search(Searching searching, Query query) {
+        ResultCursor results;
+        switch (query.mode) {
+            case "single":
+                results = searching.searchSingleTerm(String.join(" ", query.terms));
+                break;
+            case "and":
+                results = searching.searchAND(query.terms);
+                break;
+            case "or":
+                results = searching.searchOR(query.terms);
+                break;
+            case "advanced":
+                results = searching.searchAdvanced(query.terms);
+                break;
+            case "cosine":
+                results = searching.searchCosine(query.terms);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid search mode: " + query.mode);
+        }
+        return results;
+    }
+
+    private static List<Query> readQueryLog(String path) {
+        List<Query> queries = new ArrayList<>();
+        try {
+            int lineNumber = 0;
+            for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+                String[] parts = trimmed.split("\t", 2);
+                String mode = parts[0].trim().toLowerCase(Locale.ROOT);
+                if (parts.length < 2 || !List.of("single", "and", "or", "advanced", "cosine").contains(mode)) {
+                    logger.log(Level.WARNING, "Skipping malformed query on line " + lineNumber + ": " + line);
+                    continue;
+                }
+                queries.add(new Query(mode, parts[1].trim().split("[,\\s]+")));
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading query log: " + path, e);
+        }
+        return queries;
+    }
+
+    private static void printReport(Run run, String title, LatencyHistogram histogram) {
+        System.out.println();
+        System.out.println(title + ":");
+        System.out.printf("%-15s %-15s %-12s %-12s %-12s %-12s %-12s%n",
+                "Queries", "Throughput/s", "Mean ms", "p50 ms", "p99 ms", "p99.9 ms", "Max ms");
+        System.out.println("-----------------------------------------------------------------------------------------");
+        System.out.printf("%-15d %-15.1f %-12.3f %-12.3f %-12.3f %-12.3f %-12.3f%n",
+                run.serviceTimes.getCount(), run.serviceTimes.getCount() / (run.elapsedNanos / 1e9),
+                histogram.getMean() / 1e6, histogram.percentile(50) / 1e6, histogram.percentile(99) / 1e6,
+                histogram.percentile(99.9) / 1e6, histogram.getMax() / 1e6);
+        if (run.timedOut.get() > 0) {
+            System.out.println("Timed out: " + run.timedOut.get());
+        }
+    }
+
+
+    private static class Query {
+        private final String mode;
+        private final String[] terms;
+
+        Query(String mode, String[] terms) {
+            this.mode = mode;
+            this.terms = terms;
+        }
+    }
+
+    private static class Run {
+        private final LatencyHistogram responseTimes = new LatencyHistogram();
+        private final LatencyHistogram serviceTimes = new LatencyHistogram();
+        private final AtomicLong timedOut = new AtomicLong();
+        private long elapsedNanos;
+    }
+
+    /**
+     * Body of one client thread, recording latencies from when each query was due into {@code histograms[0]} and
+     * from when it was sent into {@code histograms[1]}, and counting queries that ran out of time.
+     */
+    private interface ClientLoop {
+        void run(LatencyHistogram[] histograms, AtomicLong timedOut);
+    }
+}
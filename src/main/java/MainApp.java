@@ -1,20 +1,33 @@
 import information.retrieval.WordList;
+import information.retrieval.index.AutocompleteIndex;
+import information.retrieval.index.IndexJournal;
+import information.retrieval.index.IndexStorage;
+import information.retrieval.index.OffHeapIndex;
+import information.retrieval.index.SpillingIndexBuilder;
+import information.retrieval.object.ObjectCollection;
+import information.retrieval.object.ObjectResources;
 import information.retrieval.object.ObjectSearchResult;
+import information.retrieval.utility.DistributedIndexBuilder;
+import information.retrieval.utility.ReadFile;
 import information.retrieval.utility.ResourceManager;
+import information.retrieval.utility.SearchProfile;
 import information.retrieval.utility.Searching;
 import information.retrieval.utility.WordProcessor;
-import jsastrawi.morphology.Lemmatizer;
-import opennlp.tools.tokenize.Tokenizer;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class MainApp {
 
     private static final Logger logger = Logger.getLogger(MainApp.class.getName());
+    private static final int PAGE_SIZE = 10;
 
     public static void main(String[] args) {
 
@@ -22,36 +35,22 @@ public class MainApp {
 
         Properties config = resourceManager.loadConfiguration("src/main/resources/config.properties");
 
-        String tokenizerPath = config.getProperty("tokenizer.path");
-        String stopwordsPath = config.getProperty("stopwords.path");
-        String documentsPath = config.getProperty("documents.path");
+        ObjectResources resources = resourceManager.initializeResources(config);
 
-        Tokenizer tokenizer = resourceManager.initializeTokenizer(tokenizerPath);
-        Lemmatizer lemmatizer = resourceManager.initializeLemmatizer();
-        Set<String> stopwords = resourceManager.loadStopWords(stopwordsPath);
-
-        if (tokenizer == null || lemmatizer == null || stopwords == null) {
+        if (resources == null) {
             logger.log(Level.SEVERE, "Error initializing resources.");
             return;
         }
 
-        WordProcessor wordProcessor = new WordProcessor(tokenizer, lemmatizer, stopwords);
-        WordList wordList = new WordList();
+        Map<String, ObjectCollection> collections = loadCollections(resourceManager, config, resources);
+        ObjectCollection collection = collections.values().iterator().next();
+        IndexStorage index = collection.getIndex();
+        Searching searching = collection.getSearching();
 
-        try {
-            wordProcessor.processDocuments(documentsPath, wordList);
-            wordList.calculateTfidf();
-            logger.log(Level.INFO, "Word list processed successfully.");
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error processing word list.", e);
-        }
-
-        Searching searching = new Searching(wordList, lemmatizer);
-        
         long startTime, endTime;
 
         startTime = System.currentTimeMillis();
-        Map<String, ObjectSearchResult> singleTermResult = searching.searchSingleTerm("cuaca");
+        List<ObjectSearchResult> singleTermResult = searching.searchSingleTerm("cuaca").page(0, PAGE_SIZE);
         endTime = System.currentTimeMillis();
 
         System.out.println("Time taken to search for term 'cuaca': " + (endTime - startTime) + " ms");
@@ -59,7 +58,7 @@ public class MainApp {
         ObjectSearchResult.printResults(singleTermResult);
 
         startTime = System.currentTimeMillis();
-        Map<String, ObjectSearchResult> andResult = searching.searchAND(new String[]{"cuaca", "hujan"});
+        List<ObjectSearchResult> andResult = searching.searchAND(new String[]{"cuaca", "hujan"}).page(0, PAGE_SIZE);
         endTime = System.currentTimeMillis();
 
         System.out.println("Time taken to search for terms 'cuaca' and 'hujan': " + (endTime - startTime) + " ms");
@@ -67,7 +66,7 @@ public class MainApp {
         ObjectSearchResult.printResults(andResult);
         
         startTime = System.currentTimeMillis();
-        Map<String, ObjectSearchResult> orResult = searching.searchOR(new String[]{"cuaca", "hujan"});
+        List<ObjectSearchResult> orResult = searching.searchOR(new String[]{"cuaca", "hujan"}).page(0, PAGE_SIZE);
         endTime = System.currentTimeMillis();
 
         System.out.println("Time taken to search for terms 'cuaca' or 'hujan': " + (endTime - startTime) + " ms");
@@ -76,11 +75,180 @@ public class MainApp {
 
         String[] searchTerms = new String[]{"cuaca", "hujan", "pesta", "acara"};
         startTime = System.currentTimeMillis();
-        Map<String, ObjectSearchResult> advancedResult = searching.searchAdvanced(searchTerms);
+        List<ObjectSearchResult> advancedResult = searching.searchAdvanced(searchTerms).page(0, PAGE_SIZE);
         endTime = System.currentTimeMillis();
         
         System.out.println("Time taken to search for terms '" + String.join("', '", searchTerms) + "': " + (endTime - startTime) + " ms");
         System.out.println("\nAdvanced search result for terms '" + String.join("', '", searchTerms) + "':");
         ObjectSearchResult.printResults(advancedResult);
+
+        startTime = System.currentTimeMillis();
+        List<ObjectSearchResult> cosineResult = searching.searchCosine(new String[]{"cuaca", "hujan"}).page(0, PAGE_SIZE);
+        endTime = System.currentTimeMillis();
+
+        System.out.println("Time taken for cosine search for terms 'cuaca' and 'hujan': " + (endTime - startTime) + " ms");
+        System.out.println("\nCosine search result for terms 'cuaca' and 'hujan':");
+        ObjectSearchResult.printResults(cosineResult);
+
+        if (!cosineResult.isEmpty()) {
+            ObjectSearchResult source = cosineResult.get(0);
+            startTime = System.currentTimeMillis();
+            List<ObjectSearchResult> similarResult = searching.searchMoreLikeThis(source.getDocument()).page(0, PAGE_SIZE);
+            endTime = System.currentTimeMillis();
+
+            System.out.println("Time taken to find documents like '" + source.getDocumentId() + "': " + (endTime - startTime) + " ms");
+            System.out.println("\nDocuments like '" + source.getDocumentId() + "':");
+            ObjectSearchResult.printResults(similarResult);
+        }
+
+        SearchProfile profile = new SearchProfile();
+        List<ObjectSearchResult> profiledResult = searching.searchProfiled(
+                s -> s.searchOR(new String[]{"cuaca", "hujan"}), profile).page(0, PAGE_SIZE);
+        System.out.println("\nProfile of search for terms 'cuaca' or 'hujan':");
+        System.out.println(profile);
+        if (!profiledResult.isEmpty()) {
+            ObjectSearchResult top = profiledResult.get(0);
+            System.out.println("\nScore of '" + top.getDocumentId() + "':");
+            System.out.println(profile.explain(top.getDocument()));
+        }
+
+        AutocompleteIndex autocomplete = AutocompleteIndex.build(index);
+        startTime = System.nanoTime();
+        List<String> suggestions = autocomplete.suggest("cu", AutocompleteIndex.TOP_K);
+        endTime = System.nanoTime();
+
+        System.out.println("\nTime taken to suggest completions for 'cu': " + (endTime - startTime) / 1000 + " us");
+        System.out.println("Suggestions for 'cu': " + String.join(", ", suggestions));
+
+        if (collections.size() > 1) {
+            System.out.println("\nHits for 'cuaca' per collection:");
+            for (ObjectCollection other : collections.values()) {
+                System.out.println(other.getName() + ": " + other.getSearching().searchSingleTerm("cuaca").size());
+            }
+        }
+
+        for (ObjectCollection loaded : collections.values()) {
+            loaded.close();
+        }
+    }
+
+    /**
+     * Load every configured collection. All collections share the tokenizer model, lemmatizer and stopwords in
+     * {@code resources}, so each one only adds its own index.
+     *
+     * @param resourceManager reads the per-collection configuration
+     * @param config          configuration listing the collections
+     * @param resources       shared tokenizer, lemmatizer and stopwords
+     * @return collections by name, in configuration order
+     */
+    static Map<String, ObjectCollection> loadCollections(ResourceManager resourceManager, Properties config,
+                                                         ObjectResources resources) {
+        Map<String, ObjectCollection> collections = new LinkedHashMap<>();
+        for (String name : resourceManager.getCollectionNames(config)) {
+            Properties collectionConfig = resourceManager.getCollectionConfiguration(config, name);
+            collections.put(name, loadCollection(name, collectionConfig, resources));
+            logger.log(Level.INFO, "Collection loaded: " + name);
+        }
+        return collections;
+    }
+
+    /**
+     * Build or restore the word list described by the configuration, and open it in the configured storage.
+     * A configured journal stays open in the returned collection, which logs every later change through it.
+     * With {@code build.workers} set, the corpus file or documents folder is instead indexed by that many worker
+     * processes into the off-heap index file, which is opened whatever the configured storage. The same holds with
+     * {@code build.spill.postings} set, where documents are indexed in this process within that posting budget.
+     * Errors, including a failed worker, are logged; whatever was indexed up to that point is returned.
+     *
+     * @param name      collection name
+     * @param config    configuration with document, journal and index settings
+     * @param resources tokenizer, lemmatizer and stopwords
+     * @return collection to search and update; close it to release the journal
+     */
+    static ObjectCollection loadCollection(String name, Properties config, ObjectResources resources) {
+        WordProcessor wordProcessor = new WordProcessor(resources::createTokenizer, resources.getLemmatizer(),
+                resources.getStopwords());
+        WordList wordList = new WordList();
+        IndexStorage index = wordList;
+        IndexJournal journal = null;
+
+        try {
+            String workers = config.getProperty("build.workers");
+            if (workers != null) {
+                // Index with worker processes straight into the off-heap file
+                Path indexPath = Paths.get(config.getProperty("index.path"));
+                DistributedIndexBuilder builder = new DistributedIndexBuilder(config);
+                String corpusPath = config.getProperty("corpus.path");
+                int workerCount = Integer.parseInt(workers.trim());
+                boolean built = corpusPath == null
+                        ? builder.build(config.getProperty("documents.path"), indexPath, workerCount)
+                        : builder.buildCorpus(corpusPath, indexPath, workerCount);
+                if (!built) {
+                    throw new IOException("Index workers did not build the index file: " + indexPath);
+                }
+                return new ObjectCollection(name, OffHeapIndex.open(indexPath), null, null, resources);
+            }
+
+            String spillPostings = config.getProperty("build.spill.postings");
+            if (spillPostings != null) {
+                // Index within a posting budget, spilling sorted runs to disk and merging them into the file
+                Path indexPath = Paths.get(config.getProperty("index.path"));
+                try (SpillingIndexBuilder builder = new SpillingIndexBuilder(indexPath,
+                        Long.parseLong(spillPostings.trim()))) {
+                    String corpusPath = config.getProperty("corpus.path");
+                    if (corpusPath == null) {
+                        wordProcessor.processFiles(new ReadFile().listDocuments(config.getProperty("documents.path")),
+                                builder);
+                    } else {
+                        wordProcessor.processCorpus(corpusPath, builder, null, ingestThreads(config));
+                    }
+                    builder.finish();
+                }
+                return new ObjectCollection(name, OffHeapIndex.open(indexPath), null, null, resources);
+            }
+
+            String journalPath = config.getProperty("journal.path");
+            if (journalPath == null) {
+                buildWordList(config, wordProcessor, wordList);
+            } else {
+                // Restore the last saved state and recent changes; only an empty journal is built from scratch
+                journal = IndexJournal.open(Paths.get(journalPath));
+                wordList = journal.getWordList();
+                index = wordList;
+                if (wordList.getDocumentCount() == 0) {
+                    buildWordList(config, wordProcessor, wordList);
+                    journal.checkpoint();
+                }
+            }
+            wordList.calculateTfidf();
+            logger.log(Level.INFO, "Word list processed successfully.");
+            logger.log(Level.INFO, "Index diagnostics:\n" + wordList.getDiagnostics());
+
+            if ("offheap".equals(config.getProperty("index.storage"))) {
+                Path indexPath = Paths.get(config.getProperty("index.path"));
+                OffHeapIndex.write(wordList, indexPath);
+                index = OffHeapIndex.open(indexPath);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error processing word list.", e);
+        }
+        return new ObjectCollection(name, index, wordList, journal, resources);
+    }
+
+    private static void buildWordList(Properties config, WordProcessor wordProcessor, WordList wordList) {
+        String corpusPath = config.getProperty("corpus.path");
+        if (corpusPath == null) {
+            wordProcessor.processDocuments(config.getProperty("documents.path"), wordList);
+        } else {
+            wordProcessor.processCorpus(corpusPath, wordList, null, ingestThreads(config));
+        }
+    }
+
+    /**
+     * Number of threads ingesting a corpus file, from {@code ingest.threads} or one per processor.
+     */
+    static int ingestThreads(Properties config) {
+        String threads = config.getProperty("ingest.threads");
+        return threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.trim());
     }
 }
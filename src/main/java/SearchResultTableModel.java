@@ -0,0 +1,186 @@
+import information.retrieval.object.ObjectSearchResult;
+import information.retrieval.utility.ResultCursor;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Table model over a result cursor that fetches rows lazily, one page at a time.
+ * <p>
+ * The first time a row of a page is painted, the page loader pulls that page from the cursor, publishes its rows,
+ * and then generates their snippets. Only the most recently viewed pages are kept, so memory stays flat however
+ * many hits the query returns.
+ */
+public class SearchResultTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    static final int PAGE_SIZE = 50;
+    private static final int CACHED_PAGES = 20;
+    private static final String[] COLUMN_NAMES = {"Document", "TF-IDF", "Terms", "Snippet"};
+    private static final String LOADING = "...";
+
+    private final ResultCursor results;
+    private final Function<ObjectSearchResult, String> snippetSource;
+    private final ExecutorService pageLoader;
+    private final Map<Integer, Page> pages;
+    private final String[] messageRow;
+    private volatile boolean disposed;
+
+    public SearchResultTableModel(ResultCursor results, Function<ObjectSearchResult, String> snippetSource,
+                                  ExecutorService pageLoader) {
+        this.results = results;
+        this.snippetSource = snippetSource;
+        this.pageLoader = pageLoader;
+        this.pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
+        this.messageRow = null;
+        this.disposed = false;
+    }
+
+    private SearchResultTableModel(String label, String message) {
+        this.results = ResultCursor.empty();
+        this.snippetSource = null;
+        this.pageLoader = null;
+        this.pages = Collections.emptyMap();
+        this.messageRow = new String[]{label, message, "", ""};
+        this.disposed = false;
+    }
+
+
+    /**
+     * Model showing a single status row instead of results.
+     *
+     * @param label   text of the first column.
+     * @param message text of the second column.
+     * @return message model.
+     */
+    public static SearchResultTableModel message(String label, String message) {
+        return new SearchResultTableModel(label, message);
+    }
+
+
+    /**
+     * Stop loading pages for this model; called when it is replaced by a newer search.
+     */
+    public void dispose() {
+        disposed = true;
+    }
+
+
+    /**
+     * Result shown at a row, if its page has been loaded.
+     *
+     * @param rowIndex row of the table.
+     * @return the result, or null while the row is still loading or for a message row.
+     */
+    public ObjectSearchResult getResultAt(int rowIndex) {
+        if (messageRow != null) {
+            return null;
+        }
+        Page page = pages.get(rowIndex / PAGE_SIZE);
+        int offset = rowIndex % PAGE_SIZE;
+        if (page == null || page.rows == null || offset >= page.rows.size()) {
+            return null;
+        }
+        return page.rows.get(offset);
+    }
+
+    @Override
+    public int getRowCount() {
+        return messageRow != null ? 1 : results.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        if (messageRow != null) {
+            return messageRow[columnIndex];
+        }
+        int pageNumber = rowIndex / PAGE_SIZE;
+        Page page = pages.get(pageNumber);
+        if (page == null) {
+            page = new Page();
+            pages.put(pageNumber, page);
+            requestPage(pageNumber);
+        }
+        int offset = rowIndex - pageNumber * PAGE_SIZE;
+        if (page.rows == null || offset >= page.rows.size()) {
+            return LOADING;
+        }
+
+        ObjectSearchResult result = page.rows.get(offset);
+        switch (columnIndex) {
+            case 0:
+                return result.getDocumentId();
+            case 1:
+                return result.getCumulativeTfIdf();
+            case 2:
+                return result.getMatchedTermsCount();
+            default:
+                if (snippetSource == null) {
+                    return "";
+                }
+                return page.snippets == null ? LOADING : page.snippets[offset];
+        }
+    }
+
+    private void requestPage(int pageNumber) {
+        int first = pageNumber * PAGE_SIZE;
+        pageLoader.execute(() -> {
+            if (disposed) {
+                return;
+            }
+            List<ObjectSearchResult> rows = results.page(first, PAGE_SIZE);
+            int last = first + rows.size() - 1;
+            SwingUtilities.invokeLater(() -> publish(pageNumber, rows, null, first, last));
+            if (snippetSource == null) {
+                return;
+            }
+
+            String[] snippets = new String[rows.size()];
+            for (int i = 0; i < snippets.length && !disposed; i++) {
+                snippets[i] = snippetSource.apply(rows.get(i));
+            }
+            SwingUtilities.invokeLater(() -> publish(pageNumber, rows, snippets, first, last));
+        });
+    }
+
+    private void publish(int pageNumber, List<ObjectSearchResult> rows, String[] snippets, int first, int last) {
+        if (disposed || last < first) {
+            return;
+        }
+        Page page = pages.computeIfAbsent(pageNumber, k -> new Page());
+        page.rows = rows;
+        page.snippets = snippets;
+        fireTableRowsUpdated(first, last);
+    }
+
+
+    /**
+     * Rows of one page and, once generated, their snippets. Only touched on the event dispatch thread.
+     */
+    private static class Page {
+        private List<ObjectSearchResult> rows;
+        private String[] snippets;
+    }
+}
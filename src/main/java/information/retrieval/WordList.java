@@ -1,71 +1,325 @@
 package information.retrieval;
 
+import information.retrieval.index.DictionaryListener;
+import information.retrieval.index.DocumentSet;
+import information.retrieval.index.DocumentVectors;
+import information.retrieval.index.IndexBuilder;
+import information.retrieval.index.IndexStorage;
+import information.retrieval.index.PostingList;
 import information.retrieval.object.ObjectDocument;
+import information.retrieval.object.ObjectIndexDiagnostics;
 import information.retrieval.object.ObjectTerm;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class WordList {
+/**
+ * In-memory inverted index that documents can be added to, replaced in and removed from while it is searched.
+ * <p>
+ * Changes take the write lock; lookups take the {@link #readLock()}, which searches hold for their whole run, so a
+ * search never sees a change half applied.
+ * <p>
+ * Postings are kept as one map entry per document and term, also for the most common terms. The
+ * {@link DocumentSet} of a term is built from them on demand and cached beside them, so it speeds up Boolean
+ * queries but adds to the heap rather than replacing the entries; only the
+ * {@link information.retrieval.index.OffHeapIndex} stores the sets instead of rebuilding them.
+ */
+public class WordList implements IndexStorage, IndexBuilder {
 
     private static final Logger logger = Logger.getLogger(WordList.class.getName());
 
-    private final Map<ObjectTerm, Map<String, ObjectDocument>> invertedIndex;
+    // Shallow sizes on a 64-bit JVM with compressed references, used for the diagnostics estimate
+    private static final int TREE_MAP_BYTES = 48;
+    private static final int TREE_MAP_ENTRY_BYTES = 40;
+    private static final int TERM_BYTES = 24;
+    private static final int POSTING_BYTES = 32;
+    private static final int STRING_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int INTEGER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    // Heap budget for cached document sets; the least recently used are dropped first
+    private static final long DOCUMENT_SET_CACHE_BYTES = 32L << 20;
+
+    private final Map<String, ObjectTerm> invertedIndex;
+    private final List<String> documentIds;
+    private final Map<String, Integer> documentNumbers;
+    private final List<DictionaryListener> listeners;
+    private final ReentrantReadWriteLock lock;
+    private final Map<String, DocumentSet> documentSets;
+    private long documentSetBytes;
     private int totalDocuments;
+    private DocumentVectors documentVectors;
+    private String[] termsById;
 
     public WordList() {
         this.invertedIndex = new TreeMap<>();
+        this.documentIds = new ArrayList<>();
+        this.documentNumbers = new HashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.documentSets = new LinkedHashMap<>(16, 0.75f, true);
+        this.documentSetBytes = 0;
         this.totalDocuments = 0;
+        this.documentVectors = new DocumentVectors(0);
+        this.termsById = new String[0];
     }
 
 
     /**
-     * Add terms to the word list
+     * Add terms to the word list.
+     * The document ID and each new term are stored once; every posting refers back to those instances.
+     * Safe to call from several ingestion threads; documents are numbered in the order they are added.
      *
      * @param documentID document ID
      * @param tokens     array of tokens
+     * @return document number assigned to the document, or -1 if it could not be added
      */
-    public void addTerm(String documentID, String[] tokens) {
+    @Override
+    public int addTerm(String documentID, String[] tokens) {
+        lock.writeLock().lock();
         try {
+            int document = documentIds.size();
+            Integer documentKey = document;
+            documentIds.add(documentID);
+            documentNumbers.put(documentID, documentKey);
             totalDocuments++;
             for (String token : tokens) {
-                ObjectTerm term = new ObjectTerm(token);
-                Map<String, ObjectDocument> postingList = invertedIndex.computeIfAbsent(term, k -> new TreeMap<>());
+                ObjectTerm term = invertedIndex.get(token);
+                if (term == null) {
+                    term = new ObjectTerm(token);
+                    invertedIndex.put(token, term);
+                }
 
-                ObjectDocument document = postingList.computeIfAbsent(documentID, k -> {
+                Map<Integer, ObjectDocument> postingList = term.getPostingList();
+                ObjectDocument objectDocument = postingList.get(documentKey);
+                if (objectDocument == null) {
                     term.incrementDocumentFrequency();
-                    return new ObjectDocument(documentID);
-                });
-
-                document.incrementTermFrequency();
+                    postingList.put(documentKey, new ObjectDocument(document));
+                    invalidateDocumentSet(token);
+                    fireDocumentFrequencyChanged(term);
+                } else {
+                    objectDocument.incrementTermFrequency();
+                }
             }
+            return document;
         } catch (Exception e) {
             logger.severe("Error adding term to word list for document: " + documentID);
+            return -1;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
 
     /**
-     * Calculate TF-IDF for each term in the word list
+     * Remove a document and its postings from the word list. Terms left without postings are dropped, and the
+     * document number is not reused. Every term is visited, so this costs time in the size of the dictionary.
+     * TF-IDF weights are stale until {@link #calculateTfidf()} runs again.
+     *
+     * @param documentID document ID
+     * @return true if the document was in the word list
      */
-    public void calculateTfidf() {
+    public boolean removeDocument(String documentID) {
+        lock.writeLock().lock();
+        try {
+            Integer documentKey = documentNumbers.remove(documentID);
+            if (documentKey == null) {
+                return false;
+            }
+            Iterator<ObjectTerm> terms = invertedIndex.values().iterator();
+            while (terms.hasNext()) {
+                ObjectTerm term = terms.next();
+                if (term.getPostingList().remove(documentKey) != null) {
+                    term.decrementDocumentFrequency();
+                    if (term.getDocumentFrequency() == 0) {
+                        terms.remove();
+                    }
+                    invalidateDocumentSet(term.getTerm());
+                    fireDocumentFrequencyChanged(term);
+                }
+            }
+            documentIds.set(documentKey, null);
+            totalDocuments--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Replace the terms of a document, adding it if it is not in the word list yet.
+     * The document gets a new document number.
+     *
+     * @param documentID document ID
+     * @param tokens     array of tokens
+     * @return document number assigned to the document, or -1 if it could not be added
+     */
+    public int replaceDocument(String documentID, String[] tokens) {
+        lock.writeLock().lock();
         try {
-            for (Map.Entry<ObjectTerm, Map<String, ObjectDocument>> entry : invertedIndex.entrySet()) {
-                ObjectTerm term = entry.getKey();
-                Map<String, ObjectDocument> postingList = entry.getValue();
+            removeDocument(documentID);
+            return addTerm(documentID, tokens);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Register a listener notified whenever adding or removing a document changes a term's document frequency.
+     *
+     * @param listener listener to add
+     */
+    public void addDictionaryListener(DictionaryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeDictionaryListener(DictionaryListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireDocumentFrequencyChanged(ObjectTerm term) {
+        for (DictionaryListener listener : listeners) {
+            listener.documentFrequencyChanged(term.getTerm(), term.getDocumentFrequency());
+        }
+    }
+
+
+    /**
+     * Write the documents and postings of the word list, without TF-IDF weights.
+     *
+     * @param out destination of the snapshot
+     * @throws IOException if writing fails
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(documentIds.size());
+            for (String documentId : documentIds) {
+                out.writeBoolean(documentId != null);
+                if (documentId != null) {
+                    writeString(out, documentId);
+                }
+            }
+            out.writeInt(invertedIndex.size());
+            for (ObjectTerm term : invertedIndex.values()) {
+                writeString(out, term.getTerm());
+                out.writeInt(term.getPostingList().size());
+                for (ObjectDocument document : term.getPostingList().values()) {
+                    out.writeInt(document.getDocument());
+                    out.writeInt(document.getTermFrequency());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Read a word list written by {@link #writeSnapshot(DataOutput)}. Document numbers are kept as they were,
+     * and TF-IDF weights need to be calculated again.
+     *
+     * @param in source of the snapshot
+     * @return restored word list
+     * @throws IOException if reading fails or the snapshot is malformed
+     */
+    public static WordList readSnapshot(DataInput in) throws IOException {
+        WordList wordList = new WordList();
+        int documentCount = in.readInt();
+        // One boxed key per document, shared by every posting map it appears in
+        Integer[] documentKeys = new Integer[documentCount];
+        for (int document = 0; document < documentCount; document++) {
+            documentKeys[document] = document;
+            String documentId = in.readBoolean() ? readString(in) : null;
+            wordList.documentIds.add(documentId);
+            if (documentId != null) {
+                wordList.documentNumbers.put(documentId, documentKeys[document]);
+                wordList.totalDocuments++;
+            }
+        }
+
+        int termCount = in.readInt();
+        for (int i = 0; i < termCount; i++) {
+            ObjectTerm term = new ObjectTerm(readString(in));
+            int postingCount = in.readInt();
+            for (int j = 0; j < postingCount; j++) {
+                int document = in.readInt();
+                if (document < 0 || document >= documentCount) {
+                    throw new IOException("Posting refers to unknown document " + document);
+                }
+                term.getPostingList().put(documentKeys[document], new ObjectDocument(document, in.readInt()));
+                term.incrementDocumentFrequency();
+            }
+            wordList.invertedIndex.put(term.getTerm(), term);
+        }
+        return wordList;
+    }
+
+    /**
+     * Length-prefixed UTF-8, since {@link DataOutput#writeUTF(String)} is limited to 64 KiB.
+     */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative string length in snapshot");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
 
+    /**
+     * Calculate TF-IDF for each term in the word list, together with each document's vector norm and
+     * top-weighted terms
+     */
+    public void calculateTfidf() {
+        lock.writeLock().lock();
+        try {
+            DocumentVectors vectors = new DocumentVectors(documentIds.size());
+            String[] terms = new String[invertedIndex.size()];
+            int termId = 0;
+            for (ObjectTerm term : invertedIndex.values()) {
                 double idf = Math.log10((double) totalDocuments / term.getDocumentFrequency());
 
-                for (ObjectDocument document : postingList.values()) {
+                for (ObjectDocument document : term.getPostingList().values()) {
                     double tf = document.getTermFrequency();
                     document.setTfidf(tf * idf);
+                    vectors.add(document.getDocument(), termId, document.getTfidf());
                 }
+                terms[termId++] = term.getTerm();
             }
+            documentVectors = vectors;
+            termsById = terms;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error calculating TF-IDF", e);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
@@ -76,13 +330,281 @@ public class WordList {
      * @return inverted index
      */
     public Map<ObjectTerm, Map<String, ObjectDocument>> getInvertedIndex() {
-        Map<ObjectTerm, Map<String, ObjectDocument>> copy = new TreeMap<>();
-        for (Map.Entry<ObjectTerm, Map<String, ObjectDocument>> entry : invertedIndex.entrySet()) {
-            Map<String, ObjectDocument> postingListCopy = new TreeMap<>(entry.getValue());
-            copy.put(entry.getKey(), postingListCopy);
+        lock.readLock().lock();
+        try {
+            Map<ObjectTerm, Map<String, ObjectDocument>> copy = new TreeMap<>();
+            for (ObjectTerm term : invertedIndex.values()) {
+                Map<String, ObjectDocument> postingListCopy = new TreeMap<>();
+                for (ObjectDocument document : term.getPostingList().values()) {
+                    postingListCopy.put(documentIds.get(document.getDocument()), document);
+                }
+                copy.put(term, postingListCopy);
+            }
+            return Collections.unmodifiableMap(copy);
+        } finally {
+            lock.readLock().unlock();
         }
-        return Collections.unmodifiableMap(copy);
     }
 
 
+    /**
+     * Report term and posting counts, the distribution of posting-list lengths, and an estimate of the heap
+     * used by each part of the index. Sizes are computed from object layouts, not measured, and assume a 64-bit
+     * JVM with compressed references.
+     *
+     * @return index diagnostics
+     */
+    public ObjectIndexDiagnostics getDiagnostics() {
+        lock.readLock().lock();
+        try {
+            long postingCount = 0;
+            int maxPostingLength = 0;
+            long[] histogram = new long[Integer.SIZE];
+            long termBytes = TREE_MAP_BYTES;
+            for (ObjectTerm term : invertedIndex.values()) {
+                int length = term.getPostingList().size();
+                postingCount += length;
+                maxPostingLength = Math.max(maxPostingLength, length);
+                if (length > 0) {
+                    histogram[31 - Integer.numberOfLeadingZeros(length)]++;
+                }
+                termBytes += TREE_MAP_ENTRY_BYTES + TERM_BYTES + stringBytes(term.getTerm());
+            }
+
+            long documentBytes = ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * documentIds.size();
+            for (String documentId : documentIds) {
+                documentBytes += documentId == null ? 0 : stringBytes(documentId);
+            }
+
+            Map<String, Long> structureBytes = new LinkedHashMap<>();
+            structureBytes.put("Term dictionary", termBytes);
+            structureBytes.put("Posting maps",
+                    (long) TREE_MAP_BYTES * invertedIndex.size() + TREE_MAP_ENTRY_BYTES * postingCount);
+            structureBytes.put("Postings", POSTING_BYTES * postingCount);
+            structureBytes.put("Document keys", (long) INTEGER_BYTES * documentIds.size());
+            structureBytes.put("Document IDs", documentBytes);
+            synchronized (documentSets) {
+                structureBytes.put("Document sets", documentSetBytes);
+            }
+
+            int lastBucket = histogram.length;
+            while (lastBucket > 0 && histogram[lastBucket - 1] == 0) lastBucket--;
+            long[] trimmed = new long[lastBucket];
+            System.arraycopy(histogram, 0, trimmed, 0, lastBucket);
+
+            return new ObjectIndexDiagnostics(invertedIndex.size(), documentIds.size(), postingCount, maxPostingLength,
+                    trimmed, structureBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long stringBytes(String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length() && bytesPerChar == 1; i++) {
+            if (value.charAt(i) > 0xFF) bytesPerChar = 2;
+        }
+        return STRING_BYTES + ((ARRAY_HEADER_BYTES + (long) bytesPerChar * value.length() + 7) & ~7L);
+    }
+
+
+    @Override
+    public int getTotalDocuments() {
+        lock.readLock().lock();
+        try {
+            return totalDocuments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documentIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getDocumentId(int document) {
+        lock.readLock().lock();
+        try {
+            return document >= 0 && document < documentIds.size() ? documentIds.get(document) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cursor over a term's postings. It reads the live posting map, so hold the {@link #readLock()} while using it.
+     */
+    @Override
+    public PostingList getPostingList(String term) {
+        lock.readLock().lock();
+        try {
+            ObjectTerm objectTerm = invertedIndex.get(term);
+            return objectTerm == null ? null : new MapPostingList(objectTerm.getPostingList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Documents containing a term, cached until a document is added to or removed from the term's postings.
+     * The cache holds at most {@value #DOCUMENT_SET_CACHE_BYTES} bytes of sets, dropping the least recently used;
+     * a set larger than that is rebuilt on every call.
+     */
+    @Override
+    public DocumentSet getDocumentSet(String term) {
+        synchronized (documentSets) {
+            DocumentSet documentSet = documentSets.get(term);
+            if (documentSet != null) {
+                return documentSet;
+            }
+        }
+        lock.readLock().lock();
+        try {
+            ObjectTerm objectTerm = invertedIndex.get(term);
+            if (objectTerm == null) {
+                return null;
+            }
+            // Changes invalidate under the write lock, so a set built under the read lock is current when cached
+            DocumentSet documentSet = DocumentSet.of(new MapPostingList(objectTerm.getPostingList()));
+            cacheDocumentSet(term, documentSet);
+            return documentSet;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void cacheDocumentSet(String term, DocumentSet documentSet) {
+        long bytes = documentSet.sizeInBytes();
+        if (bytes > DOCUMENT_SET_CACHE_BYTES) {
+            return;
+        }
+        synchronized (documentSets) {
+            DocumentSet previous = documentSets.put(term, documentSet);
+            documentSetBytes += bytes - (previous == null ? 0 : previous.sizeInBytes());
+            Iterator<DocumentSet> eldest = documentSets.values().iterator();
+            while (documentSetBytes > DOCUMENT_SET_CACHE_BYTES) {
+                documentSetBytes -= eldest.next().sizeInBytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void invalidateDocumentSet(String term) {
+        synchronized (documentSets) {
+            DocumentSet removed = documentSets.remove(term);
+            if (removed != null) {
+                documentSetBytes -= removed.sizeInBytes();
+            }
+        }
+    }
+
+    @Override
+    public double getDocumentNorm(int document) {
+        lock.readLock().lock();
+        try {
+            return documentVectors.norm(document);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Double> getTopTerms(int document) {
+        lock.readLock().lock();
+        try {
+            int[] termIds = new int[DocumentVectors.TOP_TERMS];
+            float[] weights = new float[DocumentVectors.TOP_TERMS];
+            documentVectors.topTerms(document, termIds, weights);
+
+            Map<String, Double> topTerms = new LinkedHashMap<>();
+            for (int i = 0; i < documentVectors.topTermCount(document); i++) {
+                topTerms.put(termsById[termIds[i]], (double) weights[i]);
+            }
+            return topTerms;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * View of the dictionary; hold the {@link #readLock()} while iterating it.
+     */
+    @Override
+    public Iterable<String> getTerms() {
+        return Collections.unmodifiableSet(invertedIndex.keySet());
+    }
+
+    @Override
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+
+    /**
+     * Posting cursor over one in-memory posting map. {@link #advance(int)} seeks in the map rather than stepping
+     * through the postings it skips.
+     */
+    private static class MapPostingList implements PostingList {
+
+        private final NavigableMap<Integer, ObjectDocument> postingList;
+        private Iterator<Map.Entry<Integer, ObjectDocument>> postings;
+        private Map.Entry<Integer, ObjectDocument> current;
+        private long read;
+
+        MapPostingList(NavigableMap<Integer, ObjectDocument> postingList) {
+            this.postingList = postingList;
+            this.postings = postingList.entrySet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return postingList.size();
+        }
+
+        @Override
+        public boolean next() {
+            current = postings.hasNext() ? postings.next() : null;
+            if (current == null) {
+                return false;
+            }
+            read++;
+            return true;
+        }
+
+        @Override
+        public long postingsRead() {
+            return read;
+        }
+
+        @Override
+        public boolean advance(int target) {
+            if (!next() || current.getKey() >= target) {
+                return current != null;
+            }
+            postings = postingList.tailMap(target, true).entrySet().iterator();
+            return next();
+        }
+
+        @Override
+        public int document() {
+            return current.getKey();
+        }
+
+        @Override
+        public int termFrequency() {
+            return current.getValue().getTermFrequency();
+        }
+
+        @Override
+        public double tfidf() {
+            return current.getValue().getTfidf();
+        }
+    }
 }
@@ -0,0 +1,204 @@
+package information.retrieval.index;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Prefix completion over an index's term dictionary, ranked by document frequency.
+ * <p>
+ * Terms are stored in a character trie where every node caches the {@link #TOP_K} most frequent terms below it,
+ * so suggesting completions for a prefix only walks the prefix and copies the cached list; the subtree is never
+ * visited. The trie follows the index as it changes: registered as a {@link DictionaryListener}, it updates the
+ * cached lists on the path of each changed term only. A term that became more frequent is promoted in place;
+ * one that became less frequent, or left the dictionary, has the lists on its path rebuilt from the lists of
+ * the child nodes.
+ * <p>
+ * Methods are synchronized, so suggestions can be read while the index is being updated.
+ */
+public class AutocompleteIndex implements DictionaryListener {
+
+    /**
+     * Number of completions cached per prefix, and the most {@link #suggest(String, int)} returns.
+     */
+    public static final int TOP_K = 8;
+
+    private final Node root = new Node();
+
+
+    /**
+     * Build the completion trie for every term of an index.
+     *
+     * @param index index whose terms and document frequencies are used.
+     * @return autocomplete index.
+     */
+    public static AutocompleteIndex build(IndexStorage index) {
+        AutocompleteIndex autocomplete = new AutocompleteIndex();
+        Lock lock = index.readLock();
+        lock.lock();
+        try {
+            for (String term : index.getTerms()) {
+                PostingList postingList = index.getPostingList(term);
+                if (postingList != null) {
+                    autocomplete.documentFrequencyChanged(term, postingList.size());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return autocomplete;
+    }
+
+
+    /**
+     * Most frequent terms starting with a prefix, most frequent first and then alphabetically.
+     *
+     * @param prefix start of the term.
+     * @param limit  maximum number of suggestions, at most {@link #TOP_K}.
+     * @return suggested terms; empty if no term starts with the prefix.
+     */
+    public synchronized List<String> suggest(String prefix, int limit) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        if (node == null || node.topCount == 0) {
+            return Collections.emptyList();
+        }
+        return List.of(Arrays.copyOf(node.topTerms, Math.max(0, Math.min(limit, node.topCount))));
+    }
+
+    @Override
+    public synchronized void documentFrequencyChanged(String term, int documentFrequency) {
+        Node[] path = new Node[term.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < term.length(); i++) {
+            Node child = path[i].child(term.charAt(i));
+            if (child == null) {
+                if (documentFrequency == 0) return;
+                child = path[i].addChild(term.charAt(i));
+            }
+            path[i + 1] = child;
+        }
+
+        Node leaf = path[term.length()];
+        int previous = leaf.frequency;
+        leaf.frequency = documentFrequency;
+        leaf.term = documentFrequency > 0 ? term : null;
+
+        if (documentFrequency > previous) {
+            for (Node node : path) {
+                node.promote(term, documentFrequency);
+            }
+            return;
+        }
+
+        // Drop nodes left without terms below them, then rebuild the cached lists bottom-up
+        for (int i = term.length(); i > 0 && path[i].term == null && path[i].keys.length == 0; i--) {
+            path[i - 1].removeChild(term.charAt(i - 1));
+        }
+        for (int i = term.length(); i >= 0; i--) {
+            path[i].rebuild();
+        }
+    }
+
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private String term;
+        private int frequency;
+
+        private final String[] topTerms = new String[TOP_K];
+        private final int[] topFrequencies = new int[TOP_K];
+        private int topCount;
+
+        Node child(char key) {
+            int i = Arrays.binarySearch(keys, key);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(char key) {
+            int i = -Arrays.binarySearch(keys, key) - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            Node child = new Node();
+            newKeys[i] = key;
+            newChildren[i] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        void removeChild(char key) {
+            int i = Arrays.binarySearch(keys, key);
+            if (i < 0) return;
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, keys.length - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, children.length - i - 1);
+            keys = newKeys.length == 0 ? NO_KEYS : newKeys;
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+
+        /**
+         * Raise a term whose frequency grew to its place in the cached list.
+         */
+        void promote(String term, int frequency) {
+            int i = 0;
+            while (i < topCount && !topTerms[i].equals(term)) i++;
+            if (i == topCount) {
+                if (topCount < TOP_K) {
+                    topCount++;
+                } else if (!ranksBefore(term, frequency, topTerms[TOP_K - 1], topFrequencies[TOP_K - 1])) {
+                    return;
+                } else {
+                    i = TOP_K - 1;
+                }
+            }
+            while (i > 0 && ranksBefore(term, frequency, topTerms[i - 1], topFrequencies[i - 1])) {
+                topTerms[i] = topTerms[i - 1];
+                topFrequencies[i] = topFrequencies[i - 1];
+                i--;
+            }
+            topTerms[i] = term;
+            topFrequencies[i] = frequency;
+        }
+
+        /**
+         * Recompute the cached list from this node's own term and the cached lists of its children.
+         */
+        void rebuild() {
+            topCount = 0;
+            if (term != null) {
+                promote(term, frequency);
+            }
+            for (Node child : children) {
+                for (int i = 0; i < child.topCount; i++) {
+                    if (topCount == TOP_K && !ranksBefore(child.topTerms[i], child.topFrequencies[i],
+                            topTerms[TOP_K - 1], topFrequencies[TOP_K - 1])) {
+                        break;
+                    }
+                    promote(child.topTerms[i], child.topFrequencies[i]);
+                }
+            }
+            for (int i = topCount; i < TOP_K; i++) {
+                topTerms[i] = null;
+            }
+        }
+
+        private static boolean ranksBefore(String term, int frequency, String other, int otherFrequency) {
+            return frequency != otherFrequency ? frequency > otherFrequency : term.compareTo(other) < 0;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package information.retrieval.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A region of a file mapped in chunks of 1 GiB, which lifts the 2 GiB limit of a single mapping.
+ * <p>
+ * Consecutive chunks overlap by a fixed number of bytes, as the block chunks of {@link DocumentStore} do, so every
+ * entry no longer than the overlap lies wholly inside the chunk its first byte falls in.
+ */
+final class ChunkedRegion {
+
+    static final int CHUNK_SHIFT = 30;
+    static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+    private final ByteBuffer[] chunks;
+    private final long length;
+
+    private ChunkedRegion(ByteBuffer[] chunks, long length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+
+    /**
+     * Map a region read-only.
+     *
+     * @param channel file to map.
+     * @param offset  file offset of the region.
+     * @param length  length of the region in bytes.
+     * @param overlap longest entry that must be readable from one chunk.
+     * @return mapped region.
+     * @throws IOException if the region cannot be mapped.
+     */
+    static ChunkedRegion map(FileChannel channel, long offset, long length, int overlap) throws IOException {
+        if (overlap < 0 || overlap > Integer.MAX_VALUE - CHUNK_SIZE) {
+            throw new IOException("Index entries too large to map: " + overlap + " bytes");
+        }
+        int chunkCount = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long start = i * CHUNK_SIZE;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start,
+                    Math.min(CHUNK_SIZE + overlap, length - start));
+        }
+        return new ChunkedRegion(chunks, length);
+    }
+
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Chunk holding the entry that starts at a position; read it at {@link #offsetInChunk(long)}.
+     */
+    ByteBuffer chunk(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)];
+    }
+
+    static int offsetInChunk(long position) {
+        return (int) (position & (CHUNK_SIZE - 1));
+    }
+
+    int getInt(long position) {
+        return chunk(position).getInt(offsetInChunk(position));
+    }
+
+    float getFloat(long position) {
+        return chunk(position).getFloat(offsetInChunk(position));
+    }
+
+    double getDouble(long position) {
+        return chunk(position).getDouble(offsetInChunk(position));
+    }
+}
@@ -0,0 +1,16 @@
+package information.retrieval.index;
+
+/**
+ * Receives changes to the document frequencies of an index's terms, as documents are added and removed.
+ */
+public interface DictionaryListener {
+
+    /**
+     * The number of documents containing a term changed.
+     * Called while the index is being modified, so implementations must be quick and must not call back into it.
+     *
+     * @param term              the term.
+     * @param documentFrequency new document frequency; 0 when the term left the dictionary.
+     */
+    void documentFrequencyChanged(String term, int documentFrequency);
+}
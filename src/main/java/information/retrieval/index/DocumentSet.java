@@ -0,0 +1,560 @@
+package information.retrieval.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable set of document numbers that picks its representation per block of 65536 numbers, as Roaring bitmaps
+ * do.
+ * <p>
+ * A block holding at most {@value #ARRAY_MAX} documents is a sorted array of the low 16 bits, two bytes a document.
+ * A fuller block is a 1024-word bitmap, a fixed 8 KiB whatever its cardinality, so a term found in a large share of
+ * the collection costs a bit per document instead of a posting per document. Set operations work block by block:
+ * two bitmaps are combined a 64-bit word at a time, an array against a bitmap tests each array entry against a bit,
+ * and two arrays are merged. Results are converted back to arrays when they thin out.
+ * <p>
+ * Containers are read through {@link CharBuffer} and {@link LongBuffer} views, so a set written into an index file
+ * with {@link #write(DataOutput)} is used straight from the mapped file by {@link #map(ByteBuffer, int)}; only
+ * the results of set operations live on the heap.
+ */
+public final class DocumentSet {
+
+    /**
+     * Largest cardinality kept as a sorted array; above it, a bitmap is smaller.
+     */
+    static final int ARRAY_MAX = 4096;
+
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final DocumentSet EMPTY = new DocumentSet(new char[0], new Buffer[0], new int[0]);
+
+    private final char[] keys;
+    private final Buffer[] containers;
+    private final int[] cardinalities;
+    private final int cardinality;
+
+    private DocumentSet(char[] keys, Buffer[] containers, int[] cardinalities) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinalities = cardinalities;
+        int total = 0;
+        for (int count : cardinalities) {
+            total += count;
+        }
+        this.cardinality = total;
+    }
+
+
+    public static DocumentSet empty() {
+        return EMPTY;
+    }
+
+
+    /**
+     * Collect the documents of a posting list.
+     *
+     * @param postings cursor over postings in ascending document order, consumed by this call.
+     * @return set of the documents.
+     */
+    public static DocumentSet of(PostingList postings) {
+        Builder builder = new Builder(postings.size());
+        while (postings.next()) {
+            builder.add(postings.document());
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * View a set written by {@link #write(DataOutput)} without copying its containers.
+     *
+     * @param region big-endian buffer holding the written set.
+     * @param offset byte offset of the set in the buffer.
+     * @return set backed by the buffer.
+     */
+    static DocumentSet map(ByteBuffer region, int offset) {
+        int blockCount = region.getInt(offset);
+        char[] keys = new char[blockCount];
+        Buffer[] containers = new Buffer[blockCount];
+        int[] cardinalities = new int[blockCount];
+        int position = offset + HEADER_BYTES * (blockCount + 1);
+        for (int block = 0; block < blockCount; block++) {
+            int header = offset + HEADER_BYTES * (block + 1);
+            keys[block] = (char) region.getInt(header);
+            cardinalities[block] = region.getInt(header + Integer.BYTES);
+            int bytes = containerBytes(cardinalities[block]);
+            ByteBuffer container = region.duplicate();
+            container.position(position).limit(position + bytes);
+            container = container.slice();
+            if (cardinalities[block] > ARRAY_MAX) {
+                containers[block] = container.asLongBuffer();
+            } else {
+                CharBuffer array = container.asCharBuffer();
+                array.limit(cardinalities[block]);
+                containers[block] = array;
+            }
+            position += bytes;
+        }
+        return new DocumentSet(keys, containers, cardinalities);
+    }
+
+
+    /**
+     * Write the set for {@link #map(ByteBuffer, int)}: {@code int blockCount, int 0}, then
+     * {@code (int key, int cardinality)} per block, then each block's bitmap words or array entries, arrays padded
+     * to a multiple of 8 bytes. If the set starts 8-byte aligned, so does every bitmap.
+     *
+     * @param out destination.
+     * @throws IOException if writing fails.
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(keys.length);
+        out.writeInt(0);
+        for (int block = 0; block < keys.length; block++) {
+            out.writeInt(keys[block]);
+            out.writeInt(cardinalities[block]);
+        }
+        for (Buffer container : containers) {
+            if (container instanceof LongBuffer) {
+                LongBuffer bitmap = (LongBuffer) container;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    out.writeLong(bitmap.get(word));
+                }
+            } else {
+                CharBuffer array = (CharBuffer) container;
+                int entry = 0;
+                for (; entry < array.limit(); entry++) {
+                    out.writeChar(array.get(entry));
+                }
+                for (; entry % (Long.BYTES / Character.BYTES) != 0; entry++) {
+                    out.writeChar(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes {@link #write(DataOutput)} produces, always a multiple of 8.
+     *
+     * @return written size.
+     */
+    int writtenBytes() {
+        int bytes = HEADER_BYTES * (keys.length + 1);
+        for (int count : cardinalities) {
+            bytes += containerBytes(count);
+        }
+        return bytes;
+    }
+
+    private static int containerBytes(int cardinality) {
+        return cardinality > ARRAY_MAX ? BITMAP_WORDS * Long.BYTES
+                : (cardinality * Character.BYTES + Long.BYTES - 1) & -Long.BYTES;
+    }
+
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+
+    public boolean contains(int document) {
+        int block = Arrays.binarySearch(keys, (char) (document >>> 16));
+        if (block < 0) {
+            return false;
+        }
+        char low = (char) document;
+        Buffer container = containers[block];
+        return container instanceof LongBuffer
+                ? (((LongBuffer) container).get(low >>> 6) & (1L << low)) != 0
+                : indexOf((CharBuffer) container, low) >= 0;
+    }
+
+    private static int indexOf(CharBuffer array, char low) {
+        int from = 0;
+        int to = array.limit() - 1;
+        while (from <= to) {
+            int middle = (from + to) >>> 1;
+            char value = array.get(middle);
+            if (value < low) {
+                from = middle + 1;
+            } else if (value > low) {
+                to = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Documents in ascending order.
+     *
+     * @return document numbers.
+     */
+    public int[] toArray() {
+        int[] documents = new int[cardinality];
+        int count = 0;
+        for (int block = 0; block < keys.length; block++) {
+            int high = keys[block] << 16;
+            Buffer container = containers[block];
+            if (container instanceof LongBuffer) {
+                LongBuffer bitmap = (LongBuffer) container;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    for (long bits = bitmap.get(word); bits != 0; bits &= bits - 1) {
+                        documents[count++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+                    }
+                }
+            } else {
+                CharBuffer array = (CharBuffer) container;
+                for (int entry = 0; entry < array.limit(); entry++) {
+                    documents[count++] = high | array.get(entry);
+                }
+            }
+        }
+        return documents;
+    }
+
+
+    /**
+     * Approximate bytes held by the containers.
+     *
+     * @return container bytes.
+     */
+    public long sizeInBytes() {
+        long bytes = (long) keys.length * (Character.BYTES + Integer.BYTES);
+        for (Buffer container : containers) {
+            bytes += container instanceof LongBuffer ? (long) BITMAP_WORDS * Long.BYTES
+                    : (long) container.limit() * Character.BYTES;
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Documents in both sets.
+     */
+    public DocumentSet and(DocumentSet other) {
+        Result result = new Result(Math.min(keys.length, other.keys.length));
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.add(keys[i], and(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.build();
+    }
+
+
+    /**
+     * Documents in either set.
+     */
+    public DocumentSet or(DocumentSet other) {
+        Result result = new Result(keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                result.add(keys[i], containers[i], cardinalities[i]);
+                i++;
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                result.add(other.keys[j], other.containers[j], other.cardinalities[j]);
+                j++;
+            } else {
+                result.add(keys[i], or(containers[i++], other.containers[j++]));
+            }
+        }
+        return result.build();
+    }
+
+
+    /**
+     * Documents in this set but not in the other.
+     */
+    public DocumentSet andNot(DocumentSet other) {
+        Result result = new Result(keys.length);
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) j++;
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                result.add(keys[i], andNot(containers[i], other.containers[j]));
+            } else {
+                result.add(keys[i], containers[i], cardinalities[i]);
+            }
+        }
+        return result.build();
+    }
+
+
+    private static Buffer and(Buffer a, Buffer b) {
+        if (a instanceof LongBuffer && b instanceof LongBuffer) {
+            LongBuffer left = (LongBuffer) a;
+            LongBuffer right = (LongBuffer) b;
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] = left.get(i) & right.get(i);
+            }
+            return compact(words);
+        }
+        if (a instanceof LongBuffer) {
+            return filter((CharBuffer) b, (LongBuffer) a, true);
+        }
+        if (b instanceof LongBuffer) {
+            return filter((CharBuffer) a, (LongBuffer) b, true);
+        }
+
+        CharBuffer left = (CharBuffer) a;
+        CharBuffer right = (CharBuffer) b;
+        char[] common = new char[Math.min(left.limit(), right.limit())];
+        int count = 0;
+        for (int i = 0, j = 0; i < left.limit() && j < right.limit(); ) {
+            if (left.get(i) < right.get(j)) {
+                i++;
+            } else if (left.get(i) > right.get(j)) {
+                j++;
+            } else {
+                common[count++] = left.get(i);
+                i++;
+                j++;
+            }
+        }
+        return CharBuffer.wrap(Arrays.copyOf(common, count));
+    }
+
+    private static Buffer or(Buffer a, Buffer b) {
+        if (a instanceof LongBuffer || b instanceof LongBuffer) {
+            long[] words = a instanceof LongBuffer ? copy((LongBuffer) a) : toBitmap((CharBuffer) a);
+            if (b instanceof LongBuffer) {
+                LongBuffer right = (LongBuffer) b;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] |= right.get(i);
+                }
+            } else {
+                CharBuffer right = (CharBuffer) b;
+                for (int entry = 0; entry < right.limit(); entry++) {
+                    char low = right.get(entry);
+                    words[low >>> 6] |= 1L << low;
+                }
+            }
+            return LongBuffer.wrap(words);
+        }
+
+        CharBuffer left = (CharBuffer) a;
+        CharBuffer right = (CharBuffer) b;
+        char[] union = new char[left.limit() + right.limit()];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.limit() && j < right.limit()) {
+            if (left.get(i) < right.get(j)) {
+                union[count++] = left.get(i++);
+            } else if (left.get(i) > right.get(j)) {
+                union[count++] = right.get(j++);
+            } else {
+                union[count++] = left.get(i++);
+                j++;
+            }
+        }
+        while (i < left.limit()) union[count++] = left.get(i++);
+        while (j < right.limit()) union[count++] = right.get(j++);
+        CharBuffer merged = CharBuffer.wrap(Arrays.copyOf(union, count));
+        return count > ARRAY_MAX ? LongBuffer.wrap(toBitmap(merged)) : merged;
+    }
+
+    private static Buffer andNot(Buffer a, Buffer b) {
+        if (a instanceof LongBuffer) {
+            long[] words = copy((LongBuffer) a);
+            if (b instanceof LongBuffer) {
+                LongBuffer right = (LongBuffer) b;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] &= ~right.get(i);
+                }
+            } else {
+                CharBuffer right = (CharBuffer) b;
+                for (int entry = 0; entry < right.limit(); entry++) {
+                    char low = right.get(entry);
+                    words[low >>> 6] &= ~(1L << low);
+                }
+            }
+            return compact(words);
+        }
+        if (b instanceof LongBuffer) {
+            return filter((CharBuffer) a, (LongBuffer) b, false);
+        }
+
+        CharBuffer left = (CharBuffer) a;
+        CharBuffer right = (CharBuffer) b;
+        char[] difference = new char[left.limit()];
+        int count = 0;
+        for (int i = 0, j = 0; i < left.limit(); i++) {
+            while (j < right.limit() && right.get(j) < left.get(i)) j++;
+            if (j == right.limit() || right.get(j) != left.get(i)) {
+                difference[count++] = left.get(i);
+            }
+        }
+        return CharBuffer.wrap(Arrays.copyOf(difference, count));
+    }
+
+    /**
+     * Entries of an array whose bit is set ({@code keep}) or clear in a bitmap.
+     */
+    private static CharBuffer filter(CharBuffer array, LongBuffer bitmap, boolean keep) {
+        char[] kept = new char[array.limit()];
+        int count = 0;
+        for (int entry = 0; entry < array.limit(); entry++) {
+            char low = array.get(entry);
+            if (((bitmap.get(low >>> 6) & (1L << low)) != 0) == keep) {
+                kept[count++] = low;
+            }
+        }
+        return CharBuffer.wrap(Arrays.copyOf(kept, count));
+    }
+
+    private static long[] copy(LongBuffer bitmap) {
+        long[] words = new long[BITMAP_WORDS];
+        bitmap.duplicate().get(words);
+        return words;
+    }
+
+    private static long[] toBitmap(CharBuffer array) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int entry = 0; entry < array.limit(); entry++) {
+            char low = array.get(entry);
+            words[low >>> 6] |= 1L << low;
+        }
+        return words;
+    }
+
+    /**
+     * Keep a bitmap, or turn it back into an array if it holds few enough documents.
+     */
+    private static Buffer compact(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        if (count > ARRAY_MAX) {
+            return LongBuffer.wrap(words);
+        }
+        char[] array = new char[count];
+        int index = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                array[index++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return CharBuffer.wrap(array);
+    }
+
+
+    /**
+     * Collects the non-empty containers of a set under construction, in ascending key order.
+     */
+    private static class Result {
+        private char[] keys;
+        private Buffer[] containers;
+        private int[] cardinalities;
+        private int size;
+
+        Result(int capacity) {
+            this.keys = new char[Math.max(1, capacity)];
+            this.containers = new Buffer[keys.length];
+            this.cardinalities = new int[keys.length];
+        }
+
+        void add(char key, Buffer container) {
+            int count;
+            if (container instanceof CharBuffer) {
+                count = container.limit();
+            } else {
+                count = 0;
+                LongBuffer bitmap = (LongBuffer) container;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    count += Long.bitCount(bitmap.get(word));
+                }
+            }
+            add(key, container, count);
+        }
+
+        void add(char key, Buffer container, int count) {
+            if (count == 0) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+                cardinalities = Arrays.copyOf(cardinalities, size * 2);
+            }
+            keys[size] = key;
+            containers[size] = container;
+            cardinalities[size++] = count;
+        }
+
+        DocumentSet build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new DocumentSet(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size),
+                    Arrays.copyOf(cardinalities, size));
+        }
+    }
+
+    /**
+     * Builds a set from documents added in ascending order, one block at a time. The block buffer starts at the
+     * expected number of documents and grows as needed, up to one block.
+     */
+    static class Builder {
+        private final Result result = new Result(1);
+        private char[] block;
+        private int key = -1;
+        private int count;
+
+        /**
+         * @param expectedSize expected number of documents, used to size the block buffer.
+         */
+        Builder(int expectedSize) {
+            this.block = new char[Math.max(1, Math.min(expectedSize, BLOCK_SIZE))];
+        }
+
+        void add(int document) {
+            int high = document >>> 16;
+            if (high != key) {
+                flush();
+                key = high;
+            }
+            if (count == block.length) {
+                block = Arrays.copyOf(block, Math.min(block.length * 2, BLOCK_SIZE));
+            }
+            block[count++] = (char) document;
+        }
+
+        DocumentSet build() {
+            flush();
+            return result.build();
+        }
+
+        private void flush() {
+            if (count == 0) {
+                return;
+            }
+            CharBuffer lows = CharBuffer.wrap(Arrays.copyOf(block, count));
+            result.add((char) key, count > ARRAY_MAX ? LongBuffer.wrap(toBitmap(lows)) : lows, count);
+            count = 0;
+        }
+    }
+}
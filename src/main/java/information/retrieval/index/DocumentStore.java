@@ -0,0 +1,293 @@
+package information.retrieval.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stored document text, block-compressed in one memory-mapped file.
+ * <p>
+ * Documents are packed into blocks of roughly {@link #BLOCK_SIZE} bytes, and each block is deflated on its own.
+ * Reading one document inflates only its block. A small cache keeps recently used blocks, so neighbouring hits
+ * on a result page share the work.
+ * <p>
+ * File layout: a fixed header, the compressed blocks, {@code long[blockCount + 1]} block offsets, and one
+ * {@code (int block, int offset, int length)} entry per document number. Documents without text have block
+ * {@code -1}.
+ */
+public class DocumentStore {
+
+    private static final Logger logger = Logger.getLogger(DocumentStore.class.getName());
+
+    private static final long MAGIC = 0x5049444f43535431L; // "PIDOCST1"
+    private static final int HEADER_BYTES = Long.BYTES + 3 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int ENTRY_BYTES = 3 * Integer.BYTES;
+    private static final int BLOCK_SIZE = 32 * 1024;
+    private static final long CHUNK_SIZE = 1L << 30;
+    private static final int CACHED_BLOCKS = 64;
+
+    private final int documentCount;
+    private final ByteBuffer[] chunks;
+    private final ByteBuffer blockOffsets;
+    private final ByteBuffer entries;
+    private final Map<Integer, byte[]> blockCache;
+
+    private DocumentStore(int documentCount, ByteBuffer[] chunks, ByteBuffer blockOffsets, ByteBuffer entries) {
+        this.documentCount = documentCount;
+        this.chunks = chunks;
+        this.blockOffsets = blockOffsets;
+        this.entries = entries;
+        this.blockCache = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > CACHED_BLOCKS;
+            }
+        };
+    }
+
+
+    /**
+     * Map a store file written by {@link Writer}.
+     * <p>
+     * The block region is mapped in overlapping chunks of 1 GiB so that every block lies wholly inside one
+     * chunk, which lifts the 2 GiB limit of a single mapping.
+     *
+     * @param file store file.
+     * @return store backed by the mapped file.
+     * @throws IOException if the file cannot be mapped or is not a store file.
+     */
+    public static DocumentStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a document store: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not a document store: " + file);
+            }
+            int documentCount = header.getInt();
+            int blockCount = header.getInt();
+            int maxBlockBytes = header.getInt();
+            long blocksEnd = header.getLong();
+            long tablesEnd = header.getLong();
+
+            long blocksLength = blocksEnd - HEADER_BYTES;
+            int chunkCount = (int) ((blocksLength + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long start = i * CHUNK_SIZE;
+                long length = Math.min(CHUNK_SIZE + maxBlockBytes, blocksLength - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + start, length);
+            }
+
+            long offsetsLength = (long) Long.BYTES * (blockCount + 1);
+            ByteBuffer blockOffsets = channel.map(FileChannel.MapMode.READ_ONLY, blocksEnd, offsetsLength);
+            ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, blocksEnd + offsetsLength,
+                    tablesEnd - blocksEnd - offsetsLength);
+
+            logger.log(Level.INFO, "Document store mapped: " + file + " (" + documentCount + " documents, "
+                    + blockCount + " blocks)");
+            return new DocumentStore(documentCount, chunks, blockOffsets, entries);
+        }
+    }
+
+
+    /**
+     * Read the stored text of a document.
+     *
+     * @param document document number.
+     * @return stored text, or null if the document has none.
+     */
+    public String getText(int document) {
+        if (document < 0 || document >= documentCount) {
+            return null;
+        }
+        int block = entries.getInt(ENTRY_BYTES * document);
+        if (block < 0) {
+            return null;
+        }
+        int offset = entries.getInt(ENTRY_BYTES * document + Integer.BYTES);
+        int length = entries.getInt(ENTRY_BYTES * document + 2 * Integer.BYTES);
+        byte[] bytes = readBlock(block);
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBlock(int block) {
+        synchronized (blockCache) {
+            byte[] cached = blockCache.get(block);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long start = blockOffsets.getLong(Long.BYTES * block) - HEADER_BYTES;
+        int length = (int) (blockOffsets.getLong(Long.BYTES * (block + 1)) - HEADER_BYTES - start);
+        ByteBuffer chunk = chunks[(int) (start / CHUNK_SIZE)];
+        ByteBuffer compressed = chunk.slice((int) (start % CHUNK_SIZE), length);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BLOCK_SIZE);
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated document block: " + block);
+                }
+                out.write(buffer, 0, inflated);
+            }
+            byte[] bytes = out.toByteArray();
+            synchronized (blockCache) {
+                blockCache.put(block, bytes);
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt document block: " + block, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+
+    /**
+     * Writer for the store format. Documents may be added in any order of document number, from several threads.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path file;
+        private final Path temp;
+        private final FileChannel channel;
+        private final Deflater deflater;
+        private final ByteArrayOutputStream block;
+        private long[] blockStarts;
+        private int blockCount;
+        private int maxBlockBytes;
+        private int[] entries;
+
+        public Writer(Path file) throws IOException {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            this.file = file;
+            this.temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            this.channel.position(HEADER_BYTES);
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            this.block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+            this.blockStarts = new long[64];
+            this.blockCount = 0;
+            this.maxBlockBytes = 0;
+            this.entries = new int[ENTRY_BYTES / Integer.BYTES * 1024];
+            Arrays.fill(entries, -1);
+        }
+
+
+        /**
+         * Store the text of a document.
+         *
+         * @param document document number.
+         * @param text     document text.
+         * @throws IOException if a finished block cannot be written.
+         */
+        public synchronized void add(int document, String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            int slot = document * ENTRY_BYTES / Integer.BYTES;
+            if (slot + 2 >= entries.length) {
+                int oldLength = entries.length;
+                entries = Arrays.copyOf(entries, Math.max(oldLength * 2, slot + 3));
+                Arrays.fill(entries, oldLength, entries.length, -1);
+            }
+            entries[slot] = blockCount;
+            entries[slot + 1] = block.size();
+            entries[slot + 2] = bytes.length;
+            block.write(bytes);
+            if (block.size() >= BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) {
+                return;
+            }
+            deflater.reset();
+            deflater.setInput(block.toByteArray());
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(block.size() / 2 + 64);
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            if (blockCount + 1 >= blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, blockStarts.length * 2);
+            }
+            blockStarts[blockCount++] = channel.position();
+            maxBlockBytes = Math.max(maxBlockBytes, compressed.size());
+            ByteBuffer out = ByteBuffer.wrap(compressed.toByteArray());
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            block.reset();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flushBlock();
+                deflater.end();
+                long blocksEnd = channel.position();
+                blockStarts[blockCount] = blocksEnd;
+
+                int documentCount = 0;
+                for (int i = entries.length / 3 - 1; i >= 0; i--) {
+                    if (entries[3 * i] >= 0) {
+                        documentCount = i + 1;
+                        break;
+                    }
+                }
+
+                ByteBuffer tables = ByteBuffer.allocate(Long.BYTES * (blockCount + 1) + ENTRY_BYTES * documentCount);
+                for (int i = 0; i <= blockCount; i++) {
+                    tables.putLong(blockStarts[i]);
+                }
+                for (int i = 0; i < 3 * documentCount; i++) {
+                    tables.putInt(entries[i]);
+                }
+                tables.flip();
+                while (tables.hasRemaining()) {
+                    channel.write(tables);
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putLong(MAGIC).putInt(documentCount).putInt(blockCount).putInt(maxBlockBytes)
+                        .putLong(blocksEnd).putLong(channel.position());
+                header.flip();
+                channel.position(0);
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.log(Level.INFO, "Document store written: " + file);
+        }
+    }
+}
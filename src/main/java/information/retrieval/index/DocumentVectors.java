@@ -0,0 +1,127 @@
+package information.retrieval.index;
+
+import java.util.Arrays;
+
+/**
+ * Per-document statistics of TF-IDF vectors, gathered one posting at a time.
+ * <p>
+ * For every document this keeps the squared vector length and its {@link #TOP_TERMS} highest-weighted terms, in
+ * a min-heap over flat arrays so the cost per posting stays at {@code O(log TOP_TERMS)} with no allocation.
+ * Terms are identified by caller-chosen integer IDs.
+ */
+public class DocumentVectors {
+
+    /**
+     * Number of top-weighted terms kept per document.
+     */
+    public static final int TOP_TERMS = 10;
+
+    private double[] normSquares;
+    private int[] heapTerms;
+    private float[] heapWeights;
+    private byte[] heapSizes;
+
+    public DocumentVectors(int expectedDocuments) {
+        int capacity = Math.max(16, expectedDocuments);
+        this.normSquares = new double[capacity];
+        this.heapTerms = new int[capacity * TOP_TERMS];
+        this.heapWeights = new float[capacity * TOP_TERMS];
+        this.heapSizes = new byte[capacity];
+    }
+
+
+    /**
+     * Record the weight of one term in one document.
+     *
+     * @param document document number.
+     * @param termId   term ID.
+     * @param weight   TF-IDF weight.
+     */
+    public void add(int document, int termId, double weight) {
+        ensureCapacity(document);
+        normSquares[document] += weight * weight;
+
+        int base = document * TOP_TERMS;
+        int size = heapSizes[document];
+        float value = (float) weight;
+        if (size < TOP_TERMS) {
+            int i = size;
+            while (i > 0 && heapWeights[base + (i - 1) / 2] > value) {
+                heapWeights[base + i] = heapWeights[base + (i - 1) / 2];
+                heapTerms[base + i] = heapTerms[base + (i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heapWeights[base + i] = value;
+            heapTerms[base + i] = termId;
+            heapSizes[document] = (byte) (size + 1);
+        } else if (value > heapWeights[base]) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= TOP_TERMS) break;
+                if (child + 1 < TOP_TERMS && heapWeights[base + child + 1] < heapWeights[base + child]) child++;
+                if (heapWeights[base + child] >= value) break;
+                heapWeights[base + i] = heapWeights[base + child];
+                heapTerms[base + i] = heapTerms[base + child];
+                i = child;
+            }
+            heapWeights[base + i] = value;
+            heapTerms[base + i] = termId;
+        }
+    }
+
+
+    /**
+     * Euclidean length of a document's TF-IDF vector.
+     *
+     * @param document document number.
+     * @return vector norm, or 0 for a document without postings.
+     */
+    public double norm(int document) {
+        return document < normSquares.length ? Math.sqrt(normSquares[document]) : 0.0;
+    }
+
+
+    /**
+     * Number of top terms kept for a document, at most {@link #TOP_TERMS}.
+     *
+     * @param document document number.
+     * @return top term count.
+     */
+    public int topTermCount(int document) {
+        return document < heapSizes.length ? heapSizes[document] : 0;
+    }
+
+
+    /**
+     * Copy a document's top terms, highest weight first.
+     *
+     * @param document document number.
+     * @param termIds  receives term IDs; length at least {@link #topTermCount(int)}.
+     * @param weights  receives weights; length at least {@link #topTermCount(int)}.
+     */
+    public void topTerms(int document, int[] termIds, float[] weights) {
+        int count = topTermCount(document);
+        int base = document * TOP_TERMS;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(heapWeights[base + b], heapWeights[base + a]));
+        for (int i = 0; i < count; i++) {
+            termIds[i] = heapTerms[base + order[i]];
+            weights[i] = heapWeights[base + order[i]];
+        }
+    }
+
+    private void ensureCapacity(int document) {
+        if (document < normSquares.length) {
+            return;
+        }
+        int capacity = Math.max(normSquares.length * 2, document + 1);
+        normSquares = Arrays.copyOf(normSquares, capacity);
+        heapTerms = Arrays.copyOf(heapTerms, capacity * TOP_TERMS);
+        heapWeights = Arrays.copyOf(heapWeights, capacity * TOP_TERMS);
+        heapSizes = Arrays.copyOf(heapSizes, capacity);
+    }
+}
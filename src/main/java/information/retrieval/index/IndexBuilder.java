@@ -0,0 +1,17 @@
+package information.retrieval.index;
+
+/**
+ * Write access to an index under construction: receives the processed tokens of each document.
+ */
+public interface IndexBuilder {
+
+    /**
+     * Add the terms of the next document.
+     * Implementations must accept calls from several ingestion threads.
+     *
+     * @param documentID document ID.
+     * @param tokens     processed tokens of the document.
+     * @return document number assigned to the document, or -1 if it could not be added.
+     */
+    int addTerm(String documentID, String[] tokens);
+}
@@ -0,0 +1,322 @@
+package information.retrieval.index;
+
+import information.retrieval.WordList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe word list: a saved snapshot plus a {@link WriteAheadLog} of the changes made since.
+ * <p>
+ * Every add, replace or remove is logged before the call returns, with the document's processed tokens, so
+ * replaying it needs no tokenizer or lemmatizer. A change is applied to the word list only once its record is
+ * durable, and changes are applied in log order, so searches never see a change that a crash could lose. A change
+ * reported as failed is neither applied nor replayed after a restart: the log removes the records of a batch it
+ * could not make durable (see {@link WriteAheadLog}).
+ * {@link #checkpoint()} saves the whole word list and empties the log, which keeps restart time proportional to the
+ * changes since the last checkpoint rather than to the corpus.
+ * <p>
+ * TF-IDF weights are not journaled; call {@link WordList#calculateTfidf()} after opening and after changes.
+ */
+public class IndexJournal implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(IndexJournal.class.getName());
+
+    private static final long SNAPSHOT_MAGIC = 0x5049534e41505332L; // "PISNAPS2"
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOG_FILE = "changes.log";
+
+    private static final byte ADD = 1;
+    private static final byte REPLACE = 2;
+    private static final byte REMOVE = 3;
+
+    private final Path directory;
+    private final WordList wordList;
+    private final WriteAheadLog log;
+    private long appliedSequence;
+    private boolean checkpointing;
+
+    private IndexJournal(Path directory, WordList wordList, WriteAheadLog log) {
+        this.directory = directory;
+        this.wordList = wordList;
+        this.log = log;
+        this.appliedSequence = log.getLastSequence();
+    }
+
+
+    /**
+     * Restore the word list from the snapshot and log in a directory, creating an empty one if there are none.
+     *
+     * @param directory journal directory.
+     * @return journal over the restored word list.
+     * @throws IOException if the snapshot or log cannot be read.
+     */
+    public static IndexJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+
+        WordList wordList = new WordList();
+        long checkpoint = 0;
+        if (Files.exists(snapshotFile)) {
+            CRC32 crc = new CRC32();
+            try (InputStream file = Files.newInputStream(snapshotFile);
+                 DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(file), crc))) {
+                if (in.readLong() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not an index snapshot: " + snapshotFile);
+                }
+                checkpoint = in.readLong();
+                wordList = WordList.readSnapshot(in);
+                long expected = crc.getValue();
+                if (in.readLong() != expected) {
+                    throw new IOException("Index snapshot is corrupt: " + snapshotFile);
+                }
+            }
+            logger.log(Level.INFO, "Loaded index snapshot with " + wordList.getTotalDocuments() + " documents.");
+        }
+
+        WordList restored = wordList;
+        try {
+            WriteAheadLog log = WriteAheadLog.open(directory.resolve(LOG_FILE), checkpoint,
+                    payload -> apply(restored, payload));
+            return new IndexJournal(directory, restored, log);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * The journaled word list. Change it only through this journal, except for building it while it is empty
+     * and saving that with {@link #checkpoint()}.
+     *
+     * @return word list.
+     */
+    public WordList getWordList() {
+        return wordList;
+    }
+
+
+    /**
+     * Add a document and wait until the change is durable.
+     *
+     * @param documentId document ID.
+     * @param tokens     processed tokens of the document.
+     * @return document number, or -1 if it could not be added.
+     * @throws IOException if the change could not be logged.
+     */
+    public int addDocument(String documentId, String[] tokens) throws IOException {
+        return logThenApply(encode(ADD, documentId, tokens), () -> wordList.addTerm(documentId, tokens));
+    }
+
+
+    /**
+     * Replace a document's tokens and wait until the change is durable.
+     *
+     * @param documentId document ID.
+     * @param tokens     processed tokens of the document.
+     * @return new document number, or -1 if it could not be added.
+     * @throws IOException if the change could not be logged.
+     */
+    public int replaceDocument(String documentId, String[] tokens) throws IOException {
+        return logThenApply(encode(REPLACE, documentId, tokens), () -> wordList.replaceDocument(documentId, tokens));
+    }
+
+
+    /**
+     * Remove a document and wait until the change is durable.
+     *
+     * @param documentId document ID.
+     * @return true if the document was in the word list.
+     * @throws IOException if the change could not be logged.
+     */
+    public boolean removeDocument(String documentId) throws IOException {
+        return logThenApply(encode(REMOVE, documentId, new String[0]), () -> wordList.removeDocument(documentId));
+    }
+
+
+    /**
+     * Append a change, wait until it is durable together with whatever other threads appended meanwhile, then apply
+     * it once every earlier change has been applied. A change whose record could not be made durable is not applied
+     * and its record is removed from the log, but it still releases the changes queued after it.
+     */
+    private <T> T logThenApply(byte[] payload, Supplier<T> change) throws IOException {
+        long sequence;
+        synchronized (this) {
+            while (checkpointing) {
+                awaitTurn();
+            }
+            sequence = log.append(payload);
+        }
+
+        IOException failure = null;
+        try {
+            log.awaitDurable(sequence);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            while (appliedSequence != sequence - 1) {
+                awaitTurn();
+            }
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                return change.get();
+            } finally {
+                appliedSequence = sequence;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait on this journal's monitor without giving up the turn on interruption; log order must hold regardless.
+     */
+    private void awaitTurn() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Save the word list as the new snapshot and empty the log.
+     * The snapshot is written next to the old one and moved over it, so a crash leaves either of them intact.
+     *
+     * @throws IOException if the snapshot could not be saved.
+     */
+    public synchronized void checkpoint() throws IOException {
+        while (checkpointing) {
+            awaitTurn();
+        }
+        checkpointing = true;
+        try {
+            long checkpoint = log.getLastSequence();
+            log.awaitDurable(checkpoint);
+            // Let changes appended before the checkpoint be applied; new ones wait until it is saved
+            while (appliedSequence < checkpoint) {
+                awaitTurn();
+            }
+            saveSnapshot(checkpoint);
+        } finally {
+            checkpointing = false;
+            notifyAll();
+        }
+    }
+
+    private void saveSnapshot(long checkpoint) throws IOException {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        Path temporary = Files.createTempFile(directory, SNAPSHOT_FILE, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                CRC32 crc = new CRC32();
+                OutputStream file = Channels.newOutputStream(channel);
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc));
+                out.writeLong(SNAPSHOT_MAGIC);
+                out.writeLong(checkpoint);
+                wordList.writeSnapshot(out);
+                out.writeLong(crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        log.truncate();
+        logger.log(Level.INFO, "Saved index snapshot at change " + checkpoint + ".");
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private static byte[] encode(byte operation, String documentId, String[] tokens) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(operation);
+            writeString(out, documentId);
+            out.writeInt(tokens.length);
+            for (String token : tokens) {
+                writeString(out, token);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void apply(WordList wordList, byte[] payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte operation = in.readByte();
+            String documentId = readString(in);
+            String[] tokens = new String[in.readInt()];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = readString(in);
+            }
+            switch (operation) {
+                case ADD:
+                    wordList.addTerm(documentId, tokens);
+                    break;
+                case REPLACE:
+                    wordList.replaceDocument(documentId, tokens);
+                    break;
+                case REMOVE:
+                    wordList.removeDocument(documentId);
+                    break;
+                default:
+                    throw new IOException("Unknown log operation " + operation);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Length-prefixed UTF-8, since {@link DataOutputStream#writeUTF(String)} is limited to 64 KiB.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative string length in log record");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package information.retrieval.index;
+
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Read access to an inverted index, independent of where the postings live.
+ * <p>
+ * Documents are addressed by dense numbers in {@code [0, getDocumentCount())}; posting lists are ordered by them.
+ * <p>
+ * An index that can change while it is read hands out a {@link #readLock()}. Hold it for as long as a cursor or
+ * the term iterable is in use, so an update cannot change the postings or the document count underneath.
+ */
+public interface IndexStorage {
+
+    /**
+     * Number of documents counted for IDF.
+     *
+     * @return total documents.
+     */
+    int getTotalDocuments();
+
+
+    /**
+     * Upper bound (exclusive) of document numbers.
+     *
+     * @return document number bound.
+     */
+    int getDocumentCount();
+
+
+    /**
+     * External ID of a document.
+     *
+     * @param document document number.
+     * @return document ID, or null if the number is not in use.
+     */
+    String getDocumentId(int document);
+
+
+    /**
+     * Open a cursor over the postings of a term.
+     *
+     * @param term indexed (lemmatized) term.
+     * @return posting cursor, or null if the term is not indexed.
+     */
+    PostingList getPostingList(String term);
+
+
+    /**
+     * Documents containing a term, as a set for boolean queries. By default the set is built from the postings on
+     * every call; indexes may store or cache it.
+     *
+     * @param term indexed (lemmatized) term.
+     * @return document set, or null if the term is not indexed.
+     */
+    default DocumentSet getDocumentSet(String term) {
+        PostingList postings = getPostingList(term);
+        return postings == null ? null : DocumentSet.of(postings);
+    }
+
+
+    /**
+     * Euclidean length of a document's TF-IDF vector, for length-normalized (cosine) scoring.
+     *
+     * @param document document number.
+     * @return vector norm, or 0 if the document has no postings or TF-IDF has not been calculated.
+     */
+    double getDocumentNorm(int document);
+
+
+    /**
+     * The highest-weighted terms of a document, at most {@link DocumentVectors#TOP_TERMS}.
+     *
+     * @param document document number.
+     * @return TF-IDF weight by term, highest first.
+     */
+    Map<String, Double> getTopTerms(int document);
+
+
+    /**
+     * Every indexed term.
+     *
+     * @return terms of the dictionary.
+     */
+    Iterable<String> getTerms();
+
+
+    /**
+     * Lock to hold while reading the index. Updates wait for it to be released, and it can be taken again by a
+     * thread already holding it. Indexes that never change need no locking, so by default it never blocks.
+     *
+     * @return read lock of the index.
+     */
+    default Lock readLock() {
+        return NoLock.INSTANCE;
+    }
+}
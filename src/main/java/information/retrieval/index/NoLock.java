@@ -0,0 +1,43 @@
+package information.retrieval.index;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Lock that never blocks, handed out as the read lock of indexes that cannot change.
+ */
+final class NoLock implements Lock {
+
+    static final NoLock INSTANCE = new NoLock();
+
+    private NoLock() {
+    }
+
+    @Override
+    public void lock() {
+    }
+
+    @Override
+    public void lockInterruptibly() {
+    }
+
+    @Override
+    public boolean tryLock() {
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+    }
+
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException("No conditions on an index that cannot change");
+    }
+}
@@ -0,0 +1,565 @@
+package information.retrieval.index;
+
+import information.retrieval.utility.WordSet;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Read-only inverted index kept in a memory-mapped file, outside the Java heap.
+ * <p>
+ * File layout: a fixed header followed by seven regions, each mapped on its own.
+ * <ul>
+ *     <li>document table: {@code int[documentCount + 1]} offsets, then the UTF-8 document IDs</li>
+ *     <li>term table: a {@link WordSet} of every term</li>
+ *     <li>term metadata: {@code (long firstPosting, int documentFrequency, long documentSet)} per term, in term
+ *     table order</li>
+ *     <li>postings: {@code (int document, int termFrequency, double tfidf)} records, grouped by term</li>
+ *     <li>document norms: one {@code double} per document number</li>
+ *     <li>top terms: {@link DocumentVectors#TOP_TERMS} {@code (int term, float weight)} pairs per document number,
+ *     highest weight first, padded with term {@code -1}</li>
+ *     <li>document sets: the {@link DocumentSet} of every term, 8-byte aligned, at the offset in its metadata</li>
+ * </ul>
+ * Lookups read the mapped regions directly, so the heap only holds the cursors handed out to callers.
+ * Document sets are mapped as they were written, so Boolean queries never rebuild them from the postings.
+ * TF-IDF weights are stored as doubles, so they read back exactly as the {@link information.retrieval.WordList}
+ * they were written from holds them.
+ * <p>
+ * The postings, norms, top terms and document sets grow with the corpus and are mapped in 1 GiB chunks
+ * ({@link ChunkedRegion}), so their size is not limited by a single mapping. The document table, term table and
+ * term metadata are mapped whole and are limited to 2 GiB each.
+ */
+public class OffHeapIndex implements IndexStorage {
+
+    private static final Logger logger = Logger.getLogger(OffHeapIndex.class.getName());
+
+    private static final long MAGIC = 0x5049494e44455834L; // "PIINDEX4"
+    private static final int REGION_COUNT = 7;
+    private static final int HEADER_BYTES = Long.BYTES + 4 * Integer.BYTES + REGION_COUNT * 2 * Long.BYTES;
+    private static final int META_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int POSTING_BYTES = 2 * Integer.BYTES + Double.BYTES;
+    private static final int TOP_TERM_BYTES = Integer.BYTES + Float.BYTES;
+
+    private final int totalDocuments;
+    private final int documentCount;
+    private final ByteBuffer documentTable;
+    private final WordSet terms;
+    private final ByteBuffer termMeta;
+    private final ChunkedRegion postings;
+    private final ChunkedRegion norms;
+    private final ChunkedRegion topTerms;
+    private final ChunkedRegion documentSets;
+
+    private OffHeapIndex(int totalDocuments, int documentCount, ByteBuffer documentTable, WordSet terms,
+                         ByteBuffer termMeta, ChunkedRegion postings, ChunkedRegion norms, ChunkedRegion topTerms,
+                         ChunkedRegion documentSets) {
+        this.totalDocuments = totalDocuments;
+        this.documentCount = documentCount;
+        this.documentTable = documentTable;
+        this.terms = terms;
+        this.termMeta = termMeta;
+        this.postings = postings;
+        this.norms = norms;
+        this.topTerms = topTerms;
+        this.documentSets = documentSets;
+    }
+
+
+    /**
+     * Map an index file written by {@link Writer}.
+     *
+     * @param file index file.
+     * @return index backed by the mapped file.
+     * @throws IOException if the file cannot be mapped or is not an index file.
+     */
+    public static OffHeapIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not an index file: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getLong() != MAGIC) {
+                throw new IOException("Not an index file: " + file);
+            }
+            int totalDocuments = header.getInt();
+            int documentCount = header.getInt();
+            header.getInt(); // term count, recorded in the term table itself
+            int maxDocumentSetBytes = header.getInt();
+
+            ByteBuffer documentTable = mapRegion(channel, header);
+            WordSet terms = new WordSet(mapRegion(channel, header));
+            ByteBuffer termMeta = mapRegion(channel, header);
+            // Fixed-size fields are aligned and never cross a chunk; a document set must fit in the overlap
+            ChunkedRegion postings = mapChunkedRegion(channel, header, 0);
+            ChunkedRegion norms = mapChunkedRegion(channel, header, 0);
+            ChunkedRegion topTerms = mapChunkedRegion(channel, header, 0);
+            ChunkedRegion documentSets = mapChunkedRegion(channel, header, maxDocumentSetBytes);
+
+            logger.log(Level.INFO, "Off-heap index mapped: " + file + " (" + terms.size() + " terms, "
+                    + postings.length() / POSTING_BYTES + " postings)");
+            return new OffHeapIndex(totalDocuments, documentCount, documentTable, terms, termMeta, postings, norms,
+                    topTerms, documentSets);
+        }
+    }
+
+
+    /**
+     * Write any index to a file in the off-heap format.
+     *
+     * @param source index to copy.
+     * @param file   destination file, replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(IndexStorage source, Path file) throws IOException {
+        Lock lock = source.readLock();
+        lock.lock();
+        try (Writer writer = new Writer(file, source.getTotalDocuments())) {
+            for (int document = 0; document < source.getDocumentCount(); document++) {
+                writer.addDocument(source.getDocumentId(document));
+            }
+            for (String term : source.getTerms()) {
+                writer.addTerm(term, source.getPostingList(term));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer mapRegion(FileChannel channel, ByteBuffer header) throws IOException {
+        long offset = header.getLong();
+        long length = header.getLong();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Index region larger than 2 GiB");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    private static ChunkedRegion mapChunkedRegion(FileChannel channel, ByteBuffer header, int overlap)
+            throws IOException {
+        long offset = header.getLong();
+        long length = header.getLong();
+        return ChunkedRegion.map(channel, offset, length, overlap);
+    }
+
+    @Override
+    public int getTotalDocuments() {
+        return totalDocuments;
+    }
+
+    @Override
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    @Override
+    public String getDocumentId(int document) {
+        if (document < 0 || document >= documentCount) {
+            return null;
+        }
+        int bytesStart = Integer.BYTES * (documentCount + 1);
+        int start = documentTable.getInt(Integer.BYTES * document);
+        int end = documentTable.getInt(Integer.BYTES * (document + 1));
+        if (start == end) {
+            return null;
+        }
+        byte[] bytes = new byte[end - start];
+        documentTable.get(bytesStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public PostingList getPostingList(String term) {
+        int index = terms.indexOf(term);
+        if (index < 0) {
+            return null;
+        }
+        return new MappedPostingList(termMeta.getLong(META_BYTES * index),
+                termMeta.getInt(META_BYTES * index + Long.BYTES));
+    }
+
+    /**
+     * Documents containing a term, mapped from the document set region; nothing is copied to the heap.
+     */
+    @Override
+    public DocumentSet getDocumentSet(String term) {
+        int index = terms.indexOf(term);
+        if (index < 0) {
+            return null;
+        }
+        long offset = termMeta.getLong(META_BYTES * index + Long.BYTES + Integer.BYTES);
+        return DocumentSet.map(documentSets.chunk(offset), ChunkedRegion.offsetInChunk(offset));
+    }
+
+    @Override
+    public double getDocumentNorm(int document) {
+        return document >= 0 && document < documentCount ? norms.getDouble((long) Double.BYTES * document) : 0.0;
+    }
+
+    @Override
+    public Map<String, Double> getTopTerms(int document) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        if (document < 0 || document >= documentCount) {
+            return result;
+        }
+        long base = (long) TOP_TERM_BYTES * DocumentVectors.TOP_TERMS * document;
+        for (int i = 0; i < DocumentVectors.TOP_TERMS; i++) {
+            int term = topTerms.getInt(base + TOP_TERM_BYTES * i);
+            if (term < 0) break;
+            result.put(terms.get(term), (double) topTerms.getFloat(base + TOP_TERM_BYTES * i + Integer.BYTES));
+        }
+        return result;
+    }
+
+    @Override
+    public Iterable<String> getTerms() {
+        return terms;
+    }
+
+
+    /**
+     * Posting cursor reading records straight from the mapped postings region.
+     */
+    private class MappedPostingList implements PostingList {
+
+        private final long start;
+        private final int size;
+        private int index;
+        private long read;
+
+        MappedPostingList(long start, int size) {
+            this.start = start;
+            this.size = size;
+            this.index = -1;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean next() {
+            if (++index < size) {
+                read++;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long postingsRead() {
+            return read;
+        }
+
+        @Override
+        public int document() {
+            return postings.getInt(POSTING_BYTES * (start + index));
+        }
+
+        @Override
+        public int termFrequency() {
+            return postings.getInt(POSTING_BYTES * (start + index) + Integer.BYTES);
+        }
+
+        @Override
+        public double tfidf() {
+            return postings.getDouble(POSTING_BYTES * (start + index) + 2 * Integer.BYTES);
+        }
+
+        /**
+         * Records have a fixed size, so skipping gallops ahead and then binary searches instead of reading every
+         * posting in between.
+         */
+        @Override
+        public boolean advance(int target) {
+            int low = index + 1;
+            if (low >= size) {
+                index = size;
+                return false;
+            }
+            int high = low;
+            for (int step = 1; high < size && documentAt(high) < target; step <<= 1) {
+                low = high + 1;
+                high += step;
+            }
+            high = Math.min(high, size - 1);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (documentAt(middle) < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            index = low < size && documentAt(low) >= target ? low : size;
+            return index < size;
+        }
+
+        private int documentAt(int position) {
+            read++;
+            return postings.getInt(POSTING_BYTES * (start + position));
+        }
+
+        @Override
+        public int read(int[] documents, float[] weights) {
+            int count = Math.max(0, Math.min(documents.length, size - index - 1));
+            long offset = POSTING_BYTES * (start + index + 1);
+            for (int i = 0; i < count; i++, offset += POSTING_BYTES) {
+                documents[i] = postings.getInt(offset);
+                weights[i] = (float) postings.getDouble(offset + 2 * Integer.BYTES);
+            }
+            index += count;
+            read += count;
+            return count;
+        }
+    }
+
+
+    /**
+     * Streaming writer for the off-heap format.
+     * <p>
+     * Terms may arrive in any order; postings and document sets are spooled to temporary files next to the
+     * destination and only the term dictionary, document IDs and per-document vector statistics are held on the
+     * heap until {@link #close()} assembles the file. Document sets, norms and top terms are derived from the
+     * postings as they stream through.
+     */
+    public static class Writer implements Closeable {
+
+        private final Path file;
+        private final Path postingsFile;
+        private final DataOutputStream postingsOut;
+        private final Path documentSetsFile;
+        private final DataOutputStream documentSetsOut;
+        private final int totalDocuments;
+        private final List<String> documentIds;
+        private final List<String> termList;
+        private long[] termStarts;
+        private int[] termSizes;
+        private long[] termSets;
+        private long postingCount;
+        private long documentSetBytes;
+        private int maxDocumentSetBytes;
+        private final DocumentVectors vectors;
+
+        public Writer(Path file, int totalDocuments) throws IOException {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            this.file = file;
+            this.postingsFile = Files.createTempFile(directory, file.getFileName().toString(), ".postings");
+            this.postingsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(postingsFile), 1 << 16));
+            this.documentSetsFile = Files.createTempFile(directory, file.getFileName().toString(), ".sets");
+            this.documentSetsOut = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(documentSetsFile), 1 << 16));
+            this.totalDocuments = totalDocuments;
+            this.documentIds = new ArrayList<>();
+            this.termList = new ArrayList<>();
+            this.termStarts = new long[1024];
+            this.termSizes = new int[1024];
+            this.termSets = new long[1024];
+            this.postingCount = 0;
+            this.documentSetBytes = 0;
+            this.maxDocumentSetBytes = 0;
+            this.vectors = new DocumentVectors(1024);
+        }
+
+
+        /**
+         * Register the next document number.
+         *
+         * @param documentId document ID, or null for an unused number.
+         */
+        public void addDocument(String documentId) {
+            documentIds.add(documentId);
+        }
+
+
+        /**
+         * Append the postings of a term. Each term may be added once.
+         *
+         * @param term     term.
+         * @param postings cursor over its postings, consumed by this call.
+         * @throws IOException if the postings cannot be spooled.
+         */
+        public void addTerm(String term, PostingList postings) throws IOException {
+            long start = postingCount;
+            int termId = termList.size();
+            int size = 0;
+            DocumentSet.Builder documents = new DocumentSet.Builder(postings.size());
+            while (postings.next()) {
+                documents.add(postings.document());
+                postingsOut.writeInt(postings.document());
+                postingsOut.writeInt(postings.termFrequency());
+                postingsOut.writeDouble(postings.tfidf());
+                vectors.add(postings.document(), termId, postings.tfidf());
+                size++;
+            }
+            postingCount += size;
+            if (size == 0) {
+                return;
+            }
+            DocumentSet documentSet = documents.build();
+            documentSet.write(documentSetsOut);
+
+            int index = termList.size();
+            if (index == termStarts.length) {
+                termStarts = Arrays.copyOf(termStarts, index * 2);
+                termSizes = Arrays.copyOf(termSizes, index * 2);
+                termSets = Arrays.copyOf(termSets, index * 2);
+            }
+            termList.add(term);
+            termStarts[index] = start;
+            termSizes[index] = size;
+            termSets[index] = documentSetBytes;
+            documentSetBytes += documentSet.writtenBytes();
+            maxDocumentSetBytes = Math.max(maxDocumentSetBytes, documentSet.writtenBytes());
+        }
+
+        @Override
+        public void close() throws IOException {
+            Path temp = null;
+            try {
+                try {
+                    postingsOut.close();
+                } finally {
+                    documentSetsOut.close();
+                }
+                Integer[] order = new Integer[termList.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> WordSet.ORDER.compare(termList.get(a), termList.get(b)));
+
+                ByteBuffer termTable = WordSet.encode(termList);
+                if (termTable.getInt(0) != termList.size()) {
+                    throw new IOException("Duplicate terms written to index");
+                }
+                ByteBuffer termMeta = ByteBuffer.allocate(META_BYTES * order.length);
+                int[] sortedPosition = new int[order.length];
+                for (int position = 0; position < order.length; position++) {
+                    termMeta.putLong(termStarts[order[position]]).putInt(termSizes[order[position]])
+                            .putLong(termSets[order[position]]);
+                    sortedPosition[order[position]] = position;
+                }
+                termMeta.flip();
+                ByteBuffer documentTable = encodeDocuments();
+                ByteBuffer norms = encodeNorms();
+                ByteBuffer topTerms = encodeTopTerms(sortedPosition);
+
+                temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    long offset = HEADER_BYTES;
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    header.putLong(MAGIC).putInt(totalDocuments).putInt(documentIds.size()).putInt(order.length)
+                            .putInt(maxDocumentSetBytes);
+                    for (ByteBuffer region : new ByteBuffer[]{documentTable, termTable, termMeta}) {
+                        header.putLong(offset).putLong(region.remaining());
+                        offset += region.remaining();
+                    }
+                    header.putLong(offset).putLong(postingCount * POSTING_BYTES);
+                    offset += postingCount * POSTING_BYTES;
+                    header.putLong(offset).putLong(norms.remaining());
+                    offset += norms.remaining();
+                    header.putLong(offset).putLong(topTerms.remaining());
+                    offset += topTerms.remaining();
+                    ByteBuffer padding = ByteBuffer.allocate((int) (-offset & (Long.BYTES - 1)));
+                    offset += padding.remaining();
+                    header.putLong(offset).putLong(documentSetBytes);
+                    header.flip();
+
+                    for (ByteBuffer region : new ByteBuffer[]{header, documentTable, termTable, termMeta}) {
+                        while (region.hasRemaining()) {
+                            channel.write(region);
+                        }
+                    }
+                    transfer(postingsFile, channel);
+                    for (ByteBuffer region : new ByteBuffer[]{norms, topTerms, padding}) {
+                        while (region.hasRemaining()) {
+                            channel.write(region);
+                        }
+                    }
+                    transfer(documentSetsFile, channel);
+                    channel.force(true);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.log(Level.INFO, "Off-heap index written: " + file);
+            } finally {
+                Files.deleteIfExists(postingsFile);
+                Files.deleteIfExists(documentSetsFile);
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+
+        private static void transfer(Path source, FileChannel channel) throws IOException {
+            try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ)) {
+                long transferred = 0;
+                long length = sourceChannel.size();
+                while (transferred < length) {
+                    transferred += sourceChannel.transferTo(transferred, length - transferred, channel);
+                }
+            }
+            channel.position(channel.size());
+        }
+
+        private ByteBuffer encodeNorms() {
+            ByteBuffer buffer = ByteBuffer.allocate(Double.BYTES * documentIds.size());
+            for (int document = 0; document < documentIds.size(); document++) {
+                buffer.putDouble(vectors.norm(document));
+            }
+            return buffer.flip();
+        }
+
+        private ByteBuffer encodeTopTerms(int[] sortedPosition) {
+            ByteBuffer buffer = ByteBuffer.allocate(TOP_TERM_BYTES * DocumentVectors.TOP_TERMS * documentIds.size());
+            int[] termIds = new int[DocumentVectors.TOP_TERMS];
+            float[] weights = new float[DocumentVectors.TOP_TERMS];
+            for (int document = 0; document < documentIds.size(); document++) {
+                int count = vectors.topTermCount(document);
+                vectors.topTerms(document, termIds, weights);
+                for (int i = 0; i < DocumentVectors.TOP_TERMS; i++) {
+                    buffer.putInt(i < count ? sortedPosition[termIds[i]] : -1).putFloat(i < count ? weights[i] : 0f);
+                }
+            }
+            return buffer.flip();
+        }
+
+        private ByteBuffer encodeDocuments() {
+            List<byte[]> encoded = new ArrayList<>(documentIds.size());
+            int totalBytes = 0;
+            for (String documentId : documentIds) {
+                byte[] bytes = documentId == null ? new byte[0] : documentId.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                totalBytes += bytes.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * (encoded.size() + 1) + totalBytes);
+            int offset = 0;
+            buffer.putInt(offset);
+            for (byte[] bytes : encoded) {
+                offset += bytes.length;
+                buffer.putInt(offset);
+            }
+            for (byte[] bytes : encoded) {
+                buffer.put(bytes);
+            }
+            return buffer.flip();
+        }
+    }
+}
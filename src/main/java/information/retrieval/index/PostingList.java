@@ -0,0 +1,92 @@
+package information.retrieval.index;
+
+/**
+ * Forward-only cursor over the postings of one term, in ascending document order.
+ * <p>
+ * A fresh cursor is positioned before the first posting; call {@link #next()} before reading.
+ */
+public interface PostingList {
+
+    /**
+     * Number of postings in the list, which is the document frequency of the term.
+     *
+     * @return posting count.
+     */
+    int size();
+
+
+    /**
+     * Move to the next posting.
+     *
+     * @return true if the cursor now points at a posting, false when the list is exhausted.
+     */
+    boolean next();
+
+
+    /**
+     * Document number of the current posting.
+     *
+     * @return document number.
+     */
+    int document();
+
+
+    /**
+     * Raw frequency of the term in the current document.
+     *
+     * @return term frequency.
+     */
+    int termFrequency();
+
+
+    /**
+     * TF-IDF weight of the term in the current document.
+     *
+     * @return TF-IDF weight.
+     */
+    double tfidf();
+
+
+    /**
+     * Number of postings this cursor has examined so far: each posting {@link #next()} moved onto and each posting
+     * {@link #advance(int)} compared with its target. Postings an advance jumped over unseen are not counted, so
+     * {@code size() - postingsRead()} is what seeking saved.
+     *
+     * @return postings examined.
+     */
+    long postingsRead();
+
+
+    /**
+     * Move to the next posting whose document is at least {@code target}, skipping the postings before it.
+     * Like {@link #next()}, the cursor always moves forward at least once.
+     *
+     * @param target document number to reach.
+     * @return true if the cursor now points at a posting, false when the list is exhausted.
+     */
+    default boolean advance(int target) {
+        while (next()) {
+            if (document() >= target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Read the next postings in bulk, advancing the cursor past them.
+     *
+     * @param documents receives document numbers.
+     * @param weights   receives TF-IDF weights.
+     * @return number of postings read, at most the array length; 0 when the list is exhausted.
+     */
+    default int read(int[] documents, float[] weights) {
+        int count = 0;
+        while (count < documents.length && next()) {
+            documents[count] = document();
+            weights[count++] = (float) tfidf();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,517 @@
+package information.retrieval.index;
+
+import information.retrieval.utility.WordSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Partial index over a slice of the documents, written as one sorted stream so several of them can be merged into
+ * a global index without holding any of them in memory.
+ * <p>
+ * File layout, all big-endian:
+ * <ul>
+ *     <li>header: {@code long} magic, {@code int documentCount}</li>
+ *     <li>document table: {@code documentCount} modified-UTF-8 document IDs, empty for an unused number</li>
+ *     <li>terms in {@link WordSet#ORDER}, each as {@code int documentFrequency}, the modified-UTF-8 term, then
+ *     {@code (int document, int termFrequency)} postings in ascending document order</li>
+ *     <li>end marker: {@code int 0}</li>
+ * </ul>
+ * Document numbers are local to the segment. {@link #merge(List, Path)} numbers the documents of each segment
+ * after those of the segments before it, so a term's postings stay in ascending order when the segments'
+ * postings are concatenated. No TF-IDF weights are stored: they depend on the global document frequency, which
+ * is only known once every segment is merged.
+ */
+public final class SegmentFile {
+
+    private static final Logger logger = Logger.getLogger(SegmentFile.class.getName());
+
+    private static final long MAGIC = 0x50495345474d5431L; // "PISEGMT1"
+    private static final int BUFFER_BYTES = 1 << 16;
+    /**
+     * Most segments read at once while merging, which bounds the open files and read buffers.
+     */
+    public static final int MERGE_FAN_IN = 64;
+
+    private SegmentFile() {
+    }
+
+
+    /**
+     * Write every term of an index to a segment file.
+     *
+     * @param source index to copy; only document IDs, postings and term frequencies are used.
+     * @param file   destination file, replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(IndexStorage source, Path file) throws IOException {
+        Lock lock = source.readLock();
+        lock.lock();
+        try {
+            List<String> documentIds = new ArrayList<>(source.getDocumentCount());
+            for (int document = 0; document < source.getDocumentCount(); document++) {
+                documentIds.add(source.getDocumentId(document));
+            }
+            List<String> terms = new ArrayList<>();
+            for (String term : source.getTerms()) {
+                terms.add(term);
+            }
+            terms.sort(WordSet.ORDER);
+
+            try (Writer writer = new Writer(file, documentIds)) {
+                for (String term : terms) {
+                    writer.addTerm(term, source.getPostingList(term));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Merge segments into one off-heap index, as if all their documents had been indexed together.
+     * <p>
+     * The segments are read side by side in term order, one posting at a time, so memory use is bounded by the
+     * document table and term dictionary the {@link OffHeapIndex.Writer} keeps, not by the postings. Document
+     * frequencies are summed over the segments and TF-IDF weights computed from the global counts.
+     * <p>
+     * At most {@link #MERGE_FAN_IN} segments are open at once. More segments are first merged in groups of
+     * consecutive segments into intermediate segments, in as many passes as needed, in a temporary folder next to
+     * the index file.
+     *
+     * @param segments  segment files, in the order their documents are to be numbered.
+     * @param indexFile destination index file, replaced if it exists.
+     * @throws IOException if a segment cannot be read or the index cannot be written.
+     */
+    public static void merge(List<Path> segments, Path indexFile) throws IOException {
+        merge(segments, indexFile, MERGE_FAN_IN);
+    }
+
+    static void merge(List<Path> segments, Path indexFile, int fanIn) throws IOException {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("Merge fan-in must be at least 2: " + fanIn);
+        }
+        Path directory = null;
+        try {
+            List<Path> pass = segments;
+            for (int passes = 0; pass.size() > fanIn; passes++) {
+                if (directory == null) {
+                    Path parent = indexFile.toAbsolutePath().getParent();
+                    Files.createDirectories(parent);
+                    directory = Files.createTempDirectory(parent, indexFile.getFileName() + ".merge");
+                }
+                List<Path> next = new ArrayList<>();
+                for (int from = 0; from < pass.size(); from += fanIn) {
+                    List<Path> group = pass.subList(from, Math.min(from + fanIn, pass.size()));
+                    if (group.size() == 1) {
+                        next.add(group.get(0));
+                        continue;
+                    }
+                    Path merged = directory.resolve("pass-" + passes + "-" + next.size() + ".seg");
+                    mergeSegments(group, merged);
+                    next.add(merged);
+                }
+                // Intermediate segments of the previous pass are merged into this one and no longer needed
+                for (Path segment : pass) {
+                    if (segment.startsWith(directory) && !next.contains(segment)) {
+                        Files.deleteIfExists(segment);
+                    }
+                }
+                logger.log(Level.FINE, "Merge pass " + passes + ": " + pass.size() + " segments into " + next.size());
+                pass = next;
+            }
+            mergeIndex(pass, indexFile);
+        } finally {
+            if (directory != null) {
+                deleteDirectory(directory);
+            }
+        }
+    }
+
+    private static void mergeIndex(List<Path> segments, Path indexFile) throws IOException {
+        try (Merge merge = new Merge(segments)) {
+            try (OffHeapIndex.Writer writer = new OffHeapIndex.Writer(indexFile, merge.totalDocuments)) {
+                for (String documentId : merge.documentIds()) {
+                    writer.addDocument(documentId);
+                }
+                merge.forEachTerm(writer::addTerm);
+            }
+            logger.log(Level.INFO, "Merged " + segments.size() + " segments (" + merge.totalDocuments
+                    + " documents) into " + indexFile);
+        }
+    }
+
+    /**
+     * Merge segments into one segment, numbering their documents one after another.
+     */
+    private static void mergeSegments(List<Path> segments, Path file) throws IOException {
+        try (Merge merge = new Merge(segments);
+             Writer writer = new Writer(file, merge.documentIds())) {
+            merge.forEachTerm(writer::addTerm);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete merge directory: " + directory, e);
+        }
+    }
+
+
+    /**
+     * Streaming segment writer. Terms must be added in {@link WordSet#ORDER}, each once.
+     */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private String lastTerm;
+
+        /**
+         * @param file        destination file, replaced if it exists.
+         * @param documentIds ID of each local document number, or null for an unused number.
+         * @throws IOException if the file cannot be created.
+         */
+        public Writer(Path file, List<String> documentIds) throws IOException {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_BYTES));
+            out.writeLong(MAGIC);
+            out.writeInt(documentIds.size());
+            for (String documentId : documentIds) {
+                out.writeUTF(documentId == null ? "" : documentId);
+            }
+        }
+
+
+        /**
+         * Append the postings of the next term.
+         *
+         * @param term     term, after every term added so far.
+         * @param postings cursor over its postings in ascending document order, consumed by this call.
+         * @throws IOException if the postings cannot be written or the term is out of order.
+         */
+        public void addTerm(String term, PostingList postings) throws IOException {
+            if (postings.size() == 0) {
+                return;
+            }
+            if (lastTerm != null && WordSet.ORDER.compare(lastTerm, term) >= 0) {
+                throw new IOException("Segment terms out of order: " + term + " after " + lastTerm);
+            }
+            lastTerm = term;
+
+            out.writeInt(postings.size());
+            out.writeUTF(term);
+            int written = 0;
+            while (postings.next()) {
+                out.writeInt(postings.document());
+                out.writeInt(postings.termFrequency());
+                written++;
+            }
+            if (written != postings.size()) {
+                throw new IOException("Posting count of term '" + term + "' does not match its size");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeInt(0);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+
+    /**
+     * Sequential segment reader: the document table is loaded on opening, then terms and their postings are
+     * streamed in file order.
+     */
+    public static class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final List<String> documentIds;
+        private String term;
+        private int documentFrequency;
+        private int remaining;
+        private int document;
+        private int termFrequency;
+
+        public Reader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES));
+            try {
+                if (in.readLong() != MAGIC) {
+                    throw new IOException("Not a segment file: " + file);
+                }
+                int documentCount = in.readInt();
+                this.documentIds = new ArrayList<>(documentCount);
+                for (int i = 0; i < documentCount; i++) {
+                    String documentId = in.readUTF();
+                    documentIds.add(documentId.isEmpty() ? null : documentId);
+                }
+            } catch (EOFException e) {
+                in.close();
+                throw new IOException("Truncated segment file: " + file, e);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        public int getDocumentCount() {
+            return documentIds.size();
+        }
+
+        public List<String> getDocumentIds() {
+            return Collections.unmodifiableList(documentIds);
+        }
+
+
+        /**
+         * Move to the next term, skipping any postings of the current one that were not read.
+         *
+         * @return true if positioned on a term, false after the last one.
+         * @throws IOException if the file cannot be read or is truncated.
+         */
+        public boolean nextTerm() throws IOException {
+            for (long bytes = 2L * Integer.BYTES * remaining; bytes > 0; ) {
+                int skipped = in.skipBytes((int) Math.min(bytes, Integer.MAX_VALUE));
+                if (skipped == 0) {
+                    throw new EOFException("Truncated segment file");
+                }
+                bytes -= skipped;
+            }
+            remaining = 0;
+            documentFrequency = in.readInt();
+            if (documentFrequency == 0) {
+                term = null;
+                return false;
+            }
+            term = in.readUTF();
+            remaining = documentFrequency;
+            return true;
+        }
+
+        public String term() {
+            return term;
+        }
+
+        public int documentFrequency() {
+            return documentFrequency;
+        }
+
+
+        /**
+         * Move to the next posting of the current term.
+         *
+         * @return true if positioned on a posting, false when the term's postings are exhausted.
+         * @throws IOException if the file cannot be read or is truncated.
+         */
+        public boolean nextPosting() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            document = in.readInt();
+            termFrequency = in.readInt();
+            remaining--;
+            return true;
+        }
+
+        public int document() {
+            return document;
+        }
+
+        public int termFrequency() {
+            return termFrequency;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Readers over segments being merged, positioned side by side so their terms come out in merged order.
+     */
+    private static class Merge implements Closeable {
+
+        private final List<Reader> readers = new ArrayList<>();
+        private final int[] bases;
+        private int totalDocuments;
+
+        Merge(List<Path> segments) throws IOException {
+            this.bases = new int[segments.size()];
+            int documentCount = 0;
+            try {
+                for (Path segment : segments) {
+                    Reader reader = new Reader(segment);
+                    bases[readers.size()] = documentCount;
+                    readers.add(reader);
+                    documentCount += reader.getDocumentCount();
+                    for (String documentId : reader.getDocumentIds()) {
+                        if (documentId != null) totalDocuments++;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * ID of each merged document number, or null for an unused number.
+         */
+        List<String> documentIds() {
+            List<String> documentIds = new ArrayList<>();
+            for (Reader reader : readers) {
+                documentIds.addAll(reader.getDocumentIds());
+            }
+            return documentIds;
+        }
+
+        /**
+         * Hand every term to a sink, in {@link WordSet#ORDER}, with its postings from all segments.
+         */
+        void forEachTerm(TermSink sink) throws IOException {
+            // Segments positioned on a term, smallest term first and then in segment order
+            PriorityQueue<Integer> pending = new PriorityQueue<>((a, b) -> {
+                int byTerm = WordSet.ORDER.compare(readers.get(a).term(), readers.get(b).term());
+                return byTerm != 0 ? byTerm : Integer.compare(a, b);
+            });
+            for (int i = 0; i < readers.size(); i++) {
+                if (readers.get(i).nextTerm()) pending.add(i);
+            }
+
+            List<Integer> sharing = new ArrayList<>();
+            while (!pending.isEmpty()) {
+                sharing.clear();
+                String term = readers.get(pending.peek()).term();
+                int documentFrequency = 0;
+                while (!pending.isEmpty() && readers.get(pending.peek()).term().equals(term)) {
+                    int segment = pending.poll();
+                    sharing.add(segment);
+                    documentFrequency += readers.get(segment).documentFrequency();
+                }
+                Collections.sort(sharing);
+
+                double idf = Math.log10((double) totalDocuments / documentFrequency);
+                try {
+                    sink.addTerm(term, new MergedPostingList(readers, bases, sharing, documentFrequency, idf));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                for (int segment : sharing) {
+                    if (readers.get(segment).nextTerm()) pending.add(segment);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (Reader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                    else failure.addSuppressed(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private interface TermSink {
+        void addTerm(String term, PostingList postings) throws IOException;
+    }
+
+
+    /**
+     * Postings of one term across the segments that contain it, renumbered into the merged document space and
+     * weighted with the global IDF.
+     */
+    private static class MergedPostingList implements PostingList {
+
+        private final List<Reader> readers;
+        private final int[] bases;
+        private final List<Integer> segments;
+        private final int size;
+        private final double idf;
+        private int current;
+        private long read;
+
+        MergedPostingList(List<Reader> readers, int[] bases, List<Integer> segments, int size, double idf) {
+            this.readers = readers;
+            this.bases = bases;
+            this.segments = segments;
+            this.size = size;
+            this.idf = idf;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean next() {
+            try {
+                while (current < segments.size()) {
+                    if (readers.get(segments.get(current)).nextPosting()) {
+                        read++;
+                        return true;
+                    }
+                    current++;
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public long postingsRead() {
+            return read;
+        }
+
+        @Override
+        public int document() {
+            int segment = segments.get(current);
+            return bases[segment] + readers.get(segment).document();
+        }
+
+        @Override
+        public int termFrequency() {
+            return readers.get(segments.get(current)).termFrequency();
+        }
+
+        @Override
+        public double tfidf() {
+            return termFrequency() * idf;
+        }
+    }
+}
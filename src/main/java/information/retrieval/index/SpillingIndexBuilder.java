@@ -0,0 +1,261 @@
+package information.retrieval.index;
+
+import information.retrieval.utility.WordSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Builds an off-heap index within a fixed memory budget, for corpora larger than the heap.
+ * <p>
+ * Postings are buffered in memory for the documents added since the last spill. Once the buffer holds the
+ * budgeted number of postings, it is sorted by term and written to a temporary run file in the
+ * {@link SegmentFile} format, and a fresh buffer takes new documents while the run is written in the background.
+ * At most one run is written at a time, so the heap holds at most two buffers. {@link #finish()} spills the last
+ * buffer and merges all runs into the index file with {@link SegmentFile#merge(List, Path)}, which streams them
+ * and reads at most {@link SegmentFile#MERGE_FAN_IN} runs at once.
+ * <p>
+ * Each run covers a contiguous range of document numbers, so run-local numbers only need the run's base added
+ * back when merging. Besides the buffers, the heap holds the document IDs and the per-document statistics the
+ * index file needs, but no postings.
+ */
+public class SpillingIndexBuilder implements IndexBuilder, Closeable {
+
+    private static final Logger logger = Logger.getLogger(SpillingIndexBuilder.class.getName());
+
+    private final Path indexFile;
+    private final Path runDirectory;
+    private final long postingBudget;
+    private final List<Path> runs = new ArrayList<>();
+    private final ExecutorService spiller = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-spiller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> pendingSpill;
+    private Path pendingRun;
+    private IOException spillFailure;
+    private Run run = new Run();
+
+    /**
+     * @param indexFile     destination off-heap index file; runs are written to a temporary folder next to it.
+     * @param postingBudget number of postings buffered before they are spilled to a run.
+     * @throws IOException if the run folder cannot be created.
+     */
+    public SpillingIndexBuilder(Path indexFile, long postingBudget) throws IOException {
+        Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        this.indexFile = indexFile;
+        this.runDirectory = Files.createTempDirectory(parent, indexFile.getFileName() + ".runs");
+        this.postingBudget = Math.max(1, postingBudget);
+    }
+
+
+    @Override
+    public int addTerm(String documentID, String[] tokens) {
+        // Count term frequencies before taking the lock, so ingestion threads only serialize on the append
+        Map<String, int[]> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.computeIfAbsent(token, key -> new int[1])[0]++;
+        }
+
+        synchronized (this) {
+            try {
+                if (run.postingCount + frequencies.size() >= postingBudget
+                        || (pendingSpill != null && pendingSpill.isDone())) {
+                    // Report a failed spill before this document is buffered, and make room for the next one
+                    awaitSpill();
+                }
+                int document = run.base + run.documentIds.size();
+                int local = run.documentIds.size();
+                run.documentIds.add(documentID);
+                for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+                    run.postings.computeIfAbsent(entry.getKey(), key -> new PostingBuffer())
+                            .add(local, entry.getValue()[0]);
+                }
+                run.postingCount += frequencies.size();
+                if (run.postingCount >= postingBudget) {
+                    spill();
+                }
+                return document;
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error spilling postings to disk for document: " + documentID, e);
+                return -1;
+            }
+        }
+    }
+
+
+    /**
+     * Spill the last buffer and merge every run into the index file.
+     *
+     * @throws IOException if a run or the index file cannot be written; a run that failed earlier is reported with
+     *                     its original exception.
+     */
+    public synchronized void finish() throws IOException {
+        awaitSpill();
+        if (!run.documentIds.isEmpty() || runs.isEmpty()) {
+            spill();
+        }
+        awaitSpill();
+        SegmentFile.merge(runs, indexFile);
+        logger.log(Level.INFO, "Merged " + runs.size() + " runs of at most " + postingBudget + " postings into "
+                + indexFile);
+    }
+
+
+    /**
+     * Delete the run files. The index file written by {@link #finish()} is kept.
+     */
+    @Override
+    public synchronized void close() {
+        spiller.shutdownNow();
+        try (Stream<Path> paths = Files.walk(runDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete run directory: " + runDirectory, e);
+        }
+    }
+
+    /**
+     * Hand the current buffer to the spill thread and start a new one, waiting first for the previous spill so
+     * no more than two buffers are ever held.
+     */
+    private void spill() throws IOException {
+        awaitSpill();
+        Run full = run;
+        Path file = runDirectory.resolve("run-" + runs.size() + ".seg");
+        runs.add(file);
+        run = new Run();
+        run.base = full.base + full.documentIds.size();
+        pendingRun = file;
+        pendingSpill = spiller.submit(() -> {
+            full.write(file);
+            return null;
+        });
+    }
+
+    /**
+     * Wait for the spill in progress. A failed spill drops its run file and is reported again by every later call,
+     * so no more documents are buffered and {@link #finish()} fails with the original error.
+     */
+    private void awaitSpill() throws IOException {
+        if (spillFailure != null) {
+            throw spillFailure;
+        }
+        if (pendingSpill == null) {
+            return;
+        }
+        try {
+            pendingSpill.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            spillFailure = new IOException("Interrupted while spilling postings", e);
+        } catch (ExecutionException e) {
+            spillFailure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        } finally {
+            pendingSpill = null;
+        }
+        if (spillFailure != null) {
+            runs.remove(pendingRun);
+            try {
+                Files.deleteIfExists(pendingRun);
+            } catch (IOException e) {
+                spillFailure.addSuppressed(e);
+            }
+            throw spillFailure;
+        }
+    }
+
+
+    /**
+     * Postings of the documents added since the last spill, numbered from the run's base.
+     */
+    private static class Run {
+        private final List<String> documentIds = new ArrayList<>();
+        private final Map<String, PostingBuffer> postings = new HashMap<>();
+        private int base;
+        private long postingCount;
+
+        void write(Path file) throws IOException {
+            String[] terms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(terms, WordSet.ORDER);
+            try (SegmentFile.Writer writer = new SegmentFile.Writer(file, documentIds)) {
+                for (String term : terms) {
+                    writer.addTerm(term, postings.get(term).cursor());
+                }
+            }
+            logger.log(Level.FINE, "Spilled " + postingCount + " postings of " + documentIds.size()
+                    + " documents to " + file);
+        }
+    }
+
+    /**
+     * Growable {@code (document, termFrequency)} pairs of one term, in the order documents were added.
+     */
+    private static class PostingBuffer {
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int document, int termFrequency) {
+            if (2 * size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[2 * size] = document;
+            data[2 * size + 1] = termFrequency;
+            size++;
+        }
+
+        PostingList cursor() {
+            return new PostingList() {
+                private int index = -1;
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public boolean next() {
+                    return ++index < size;
+                }
+
+                @Override
+                public long postingsRead() {
+                    return Math.min(index + 1, size);
+                }
+
+                @Override
+                public int document() {
+                    return data[2 * index];
+                }
+
+                @Override
+                public int termFrequency() {
+                    return data[2 * index + 1];
+                }
+
+                @Override
+                public double tfidf() {
+                    return 0.0;
+                }
+            };
+        }
+    }
+}
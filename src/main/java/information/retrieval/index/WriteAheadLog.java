@@ -0,0 +1,259 @@
+package information.retrieval.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of index changes, made durable before a change is acknowledged.
+ * <p>
+ * Each record carries a sequence number and a CRC32 over that number and its payload:
+ * <pre>
+ *   int payloadLength, int crc, long sequence, byte[payloadLength] payload
+ * </pre>
+ * Appending only queues a record. Writers then wait in {@link #awaitDurable(long)}, where the first of them
+ * writes every queued record and forces the file once for all of them, so concurrent writers share one
+ * {@code fsync} (group commit).
+ * <p>
+ * On open, records are read back until the first one that is incomplete or fails its checksum. That is where a
+ * crash interrupted the last write, so the file is truncated there.
+ * <p>
+ * If writing or forcing a batch fails, the file is truncated back to the end of the last durable batch before the
+ * failure is reported. A record whose writer was told it failed is therefore not replayed on the next open. If the
+ * truncation fails too, that can no longer be promised; the failure is logged and the log accepts no more records.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+
+    private static final long MAGIC = 0x504957414c4f4731L; // "PIWALOG1"
+    private static final int HEADER_BYTES = Long.BYTES;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final Object flushLock = new Object();
+    private final List<ByteBuffer> pending = new ArrayList<>();
+    private long lastSequence;
+    private volatile long durableSequence;
+    private long durableOffset;
+    private IOException failure;
+
+    private WriteAheadLog(FileChannel channel, long lastSequence, long durableOffset) {
+        this.channel = channel;
+        this.lastSequence = lastSequence;
+        this.durableSequence = lastSequence;
+        this.durableOffset = durableOffset;
+    }
+
+
+    /**
+     * Open a log, creating it if needed, and replay the records written after a checkpoint.
+     *
+     * @param file          log file.
+     * @param checkpoint    sequence number already covered by the saved index state; older records are skipped.
+     * @param replay        receives the payload of each record after the checkpoint, in log order.
+     * @return log positioned for appending.
+     * @throws IOException if the file cannot be read or is not a log.
+     */
+    public static WriteAheadLog open(Path file, long checkpoint, Consumer<byte[]> replay) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return open(channel, file, checkpoint, replay);
+    }
+
+    /**
+     * Open a log over a channel already opened for reading and writing; the log owns the channel from here on.
+     */
+    static WriteAheadLog open(FileChannel channel, Path file, long checkpoint, Consumer<byte[]> replay)
+            throws IOException {
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(0, MAGIC);
+                channel.truncate(0);
+                channel.write(header, 0);
+                channel.force(true);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                channel.read(header, 0);
+                if (header.getLong(0) != MAGIC) {
+                    throw new IOException("Not a write-ahead log: " + file);
+                }
+            }
+
+            long lastSequence = checkpoint;
+            long position = HEADER_BYTES;
+            long size = channel.size();
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            int replayed = 0;
+            while (position + RECORD_HEADER_BYTES <= size) {
+                recordHeader.clear();
+                readFully(channel, recordHeader, position);
+                int length = recordHeader.getInt(0);
+                int checksum = recordHeader.getInt(Integer.BYTES);
+                long sequence = recordHeader.getLong(2 * Integer.BYTES);
+                if (length < 0 || length > MAX_PAYLOAD_BYTES || position + RECORD_HEADER_BYTES + length > size) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, position + RECORD_HEADER_BYTES);
+                crc.reset();
+                crc.update(recordHeader.array(), 2 * Integer.BYTES, Long.BYTES);
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                if (sequence > lastSequence) {
+                    replay.accept(payload.array());
+                    lastSequence = sequence;
+                    replayed++;
+                }
+                position += RECORD_HEADER_BYTES + length;
+            }
+
+            if (position < size) {
+                logger.log(Level.WARNING, "Discarding " + (size - position) + " bytes of incomplete log records.");
+                channel.truncate(position);
+                channel.force(true);
+            }
+            if (replayed > 0) {
+                logger.log(Level.INFO, "Replayed " + replayed + " log records.");
+            }
+            channel.position(position);
+            return new WriteAheadLog(channel, lastSequence, position);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Queue a record. It is not durable until {@link #awaitDurable(long)} returns for its sequence number.
+     *
+     * @param payload record content.
+     * @return sequence number of the record.
+     */
+    public synchronized long append(byte[] payload) {
+        long sequence = ++lastSequence;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length).putInt(0).putLong(sequence).put(payload).flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 2 * Integer.BYTES, Long.BYTES + payload.length);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        pending.add(record);
+        return sequence;
+    }
+
+
+    /**
+     * Wait until a record is on disk, writing and forcing the queued records if no other writer is doing so.
+     *
+     * @param sequence sequence number returned by {@link #append(byte[])}.
+     * @throws IOException if the log could not be written; the records of the failed batch are removed again, and
+     *                     the log accepts no further records after that.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed earlier", failure);
+            }
+            if (durableSequence >= sequence) {
+                return;
+            }
+
+            ByteBuffer[] batch;
+            long batchSequence;
+            synchronized (this) {
+                batch = pending.toArray(new ByteBuffer[0]);
+                pending.clear();
+                batchSequence = lastSequence;
+            }
+            try {
+                while (batch.length > 0 && batch[batch.length - 1].hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                rollBack(e);
+                throw e;
+            }
+            durableSequence = batchSequence;
+            durableOffset = channel.position();
+        }
+    }
+
+    /**
+     * Cut off whatever part of a failed batch reached the file, so its records are not replayed.
+     */
+    private void rollBack(IOException failure) {
+        try {
+            channel.truncate(durableOffset);
+            channel.force(true);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+            logger.log(Level.SEVERE, "Could not remove failed log records; they may be replayed on the next open.", e);
+        }
+    }
+
+
+    /**
+     * Sequence number of the most recently appended record.
+     *
+     * @return last sequence number.
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+
+    /**
+     * Drop every record after the index state they describe has been saved. The caller must make sure no record
+     * is appended concurrently; sequence numbers keep counting up from where they were.
+     *
+     * @throws IOException if the log could not be truncated.
+     */
+    public void truncate() throws IOException {
+        awaitDurable(getLastSequence());
+        synchronized (flushLock) {
+            channel.truncate(HEADER_BYTES);
+            channel.position(HEADER_BYTES);
+            channel.force(true);
+            durableOffset = HEADER_BYTES;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitDurable(getLastSequence());
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log");
+            }
+        }
+    }
+}
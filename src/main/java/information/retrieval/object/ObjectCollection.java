@@ -0,0 +1,147 @@
+package information.retrieval.object;
+
+import information.retrieval.WordList;
+import information.retrieval.index.IndexJournal;
+import information.retrieval.index.IndexStorage;
+import information.retrieval.utility.Searching;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One named collection served by the process: its own index and searcher, built over the NLP resources shared
+ * by every collection.
+ * <p>
+ * Documents are added, replaced and removed through the collection, which logs each change to the collection's
+ * {@link IndexJournal} before applying it, so the change survives a crash. The journal stays open until the
+ * collection is closed. Changes go to the word list the index was built from; when the collection is served from
+ * an off-heap copy, they are searchable after the next load, which restores the journal and writes the copy anew.
+ * Searches hold the word list's read lock while they run and changes take its write lock, so documents can be
+ * changed while the collection is being searched.
+ */
+public class ObjectCollection implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ObjectCollection.class.getName());
+
+    private final String name;
+    private final IndexStorage index;
+    private final Searching searching;
+    private final WordList wordList;
+    private final IndexJournal journal;
+
+    /**
+     * @param name      collection name.
+     * @param index     index searched.
+     * @param wordList  word list that changes are applied to, or null if the index was built straight to a file.
+     * @param journal   journal of the word list, or null if changes are not logged.
+     * @param resources shared NLP resources.
+     */
+    public ObjectCollection(String name, IndexStorage index, WordList wordList, IndexJournal journal,
+                            ObjectResources resources) {
+        this.name = name;
+        this.index = index;
+        this.wordList = wordList;
+        this.journal = journal;
+        this.searching = new Searching(index, resources.getLemmatizer());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public IndexStorage getIndex() {
+        return index;
+    }
+
+    public Searching getSearching() {
+        return searching;
+    }
+
+
+    /**
+     * Add a document. TF-IDF weights are stale until {@link WordList#calculateTfidf()} runs again.
+     *
+     * @param documentId document ID.
+     * @param tokens     processed tokens of the document.
+     * @return document number, or -1 if the document could not be added or logged.
+     */
+    public int addDocument(String documentId, String[] tokens) {
+        if (!isUpdatable()) {
+            return -1;
+        }
+        try {
+            return journal == null ? wordList.addTerm(documentId, tokens) : journal.addDocument(documentId, tokens);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error logging document added to collection " + name + ": " + documentId, e);
+            return -1;
+        }
+    }
+
+
+    /**
+     * Replace a document's tokens, adding the document if it is not in the collection yet.
+     * TF-IDF weights are stale until {@link WordList#calculateTfidf()} runs again.
+     *
+     * @param documentId document ID.
+     * @param tokens     processed tokens of the document.
+     * @return new document number, or -1 if the document could not be added or logged.
+     */
+    public int replaceDocument(String documentId, String[] tokens) {
+        if (!isUpdatable()) {
+            return -1;
+        }
+        try {
+            return journal == null ? wordList.replaceDocument(documentId, tokens)
+                    : journal.replaceDocument(documentId, tokens);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error logging document replaced in collection " + name + ": " + documentId, e);
+            return -1;
+        }
+    }
+
+
+    /**
+     * Remove a document. TF-IDF weights are stale until {@link WordList#calculateTfidf()} runs again.
+     *
+     * @param documentId document ID.
+     * @return true if the document was in the collection and its removal was logged.
+     */
+    public boolean removeDocument(String documentId) {
+        if (!isUpdatable()) {
+            return false;
+        }
+        try {
+            return journal == null ? wordList.removeDocument(documentId) : journal.removeDocument(documentId);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error logging document removed from collection " + name + ": " + documentId, e);
+            return false;
+        }
+    }
+
+    private boolean isUpdatable() {
+        if (wordList == null) {
+            logger.log(Level.SEVERE, "Collection " + name + " was built straight to an index file and cannot be "
+                    + "updated.");
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Close the journal. Every change already returned is durable, so this only releases the log file.
+     */
+    @Override
+    public void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing journal of collection " + name, e);
+        }
+    }
+}
@@ -2,16 +2,24 @@ package information.retrieval.object;
 
 public class ObjectDocument {
 
-    private final String documentID;
+    private final int document;
     private int termFrequency;
     private double tfidf;
 
-    public ObjectDocument(String documentID) {
-        this.documentID = documentID;
-        this.termFrequency = 1;
+    public ObjectDocument(int document) {
+        this(document, 1);
+    }
+
+    public ObjectDocument(int document, int termFrequency) {
+        this.document = document;
+        this.termFrequency = termFrequency;
         this.tfidf = 0.0;
     }
 
+    public int getDocument() {
+        return document;
+    }
+
     public int getTermFrequency() {
         return termFrequency;
     }
@@ -33,11 +41,11 @@ public class ObjectDocument {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         ObjectDocument that = (ObjectDocument) obj;
-        return documentID.equals(that.documentID);
+        return document == that.document;
     }
 
     @Override
     public int hashCode() {
-        return documentID.hashCode();
+        return Integer.hashCode(document);
     }
 }
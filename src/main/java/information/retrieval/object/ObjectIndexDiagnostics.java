@@ -0,0 +1,89 @@
+package information.retrieval.object;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ObjectIndexDiagnostics {
+
+    private final int termCount;
+    private final int documentCount;
+    private final long postingCount;
+    private final int maxPostingLength;
+    private final long[] postingLengthHistogram;
+    private final Map<String, Long> structureBytes;
+
+    public ObjectIndexDiagnostics(int termCount, int documentCount, long postingCount, int maxPostingLength,
+                                  long[] postingLengthHistogram, Map<String, Long> structureBytes) {
+        this.termCount = termCount;
+        this.documentCount = documentCount;
+        this.postingCount = postingCount;
+        this.maxPostingLength = maxPostingLength;
+        this.postingLengthHistogram = postingLengthHistogram.clone();
+        this.structureBytes = Collections.unmodifiableMap(new LinkedHashMap<>(structureBytes));
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getPostingCount() {
+        return postingCount;
+    }
+
+    public int getMaxPostingLength() {
+        return maxPostingLength;
+    }
+
+    /**
+     * Number of terms per posting-list length bucket; bucket {@code i} counts lengths in {@code [2^i, 2^(i+1))}.
+     *
+     * @return histogram of posting-list lengths.
+     */
+    public long[] getPostingLengthHistogram() {
+        return postingLengthHistogram.clone();
+    }
+
+    /**
+     * Estimated heap bytes per index structure, in report order.
+     *
+     * @return estimated bytes keyed by structure name.
+     */
+    public Map<String, Long> getStructureBytes() {
+        return structureBytes;
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (long bytes : structureBytes.values()) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Terms: %d, Documents: %d, Postings: %d, Longest posting list: %d%n",
+                termCount, documentCount, postingCount, maxPostingLength));
+
+        report.append(String.format("%-20s %-10s%n", "Posting length", "Terms"));
+        for (int i = 0; i < postingLengthHistogram.length; i++) {
+            if (postingLengthHistogram[i] == 0) continue;
+            String range = i == 0 ? "1" : (1L << i) + "-" + ((1L << (i + 1)) - 1);
+            report.append(String.format("%-20s %-10d%n", range, postingLengthHistogram[i]));
+        }
+
+        report.append(String.format("%-20s %-15s %-10s%n", "Structure", "Bytes", "Per posting"));
+        for (Map.Entry<String, Long> entry : structureBytes.entrySet()) {
+            report.append(String.format("%-20s %-15d %-10.1f%n", entry.getKey(), entry.getValue(),
+                    postingCount == 0 ? 0.0 : (double) entry.getValue() / postingCount));
+        }
+        report.append(String.format("%-20s %-15d", "Total", getTotalBytes()));
+        return report.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package information.retrieval.object;
+
+import jsastrawi.morphology.Lemmatizer;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+
+import java.util.Set;
+
+public class ObjectResources {
+
+    private final TokenizerModel tokenizerModel;
+    private final Tokenizer tokenizer;
+    private final Lemmatizer lemmatizer;
+    private final Set<String> stopwords;
+
+    public ObjectResources(TokenizerModel tokenizerModel, Lemmatizer lemmatizer, Set<String> stopwords) {
+        this.tokenizerModel = tokenizerModel;
+        this.tokenizer = tokenizerModel == null ? null : new TokenizerME(tokenizerModel);
+        this.lemmatizer = lemmatizer;
+        this.stopwords = stopwords;
+    }
+
+    public Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    /**
+     * Create a new tokenizer over the shared model; tokenizers are not thread-safe, so use one per thread.
+     *
+     * @return new tokenizer.
+     */
+    public Tokenizer createTokenizer() {
+        return new TokenizerME(tokenizerModel);
+    }
+
+    public Lemmatizer getLemmatizer() {
+        return lemmatizer;
+    }
+
+    public Set<String> getStopwords() {
+        return stopwords;
+    }
+}
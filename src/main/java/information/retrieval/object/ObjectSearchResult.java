@@ -1,24 +1,41 @@
 package information.retrieval.object;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Collection;
 
 public class ObjectSearchResult {
 
+    private final int document;
     private final String documentId;
     private double cumulativeTfIdf;
-    private final Set<String> matchedTerms;
+    private int matchedTermsCount;
 
     public ObjectSearchResult(String documentId) {
+        this(-1, documentId);
+    }
+
+    public ObjectSearchResult(int document, String documentId) {
+        this(document, documentId, 0.0, 0);
+    }
+
+    public ObjectSearchResult(int document, String documentId, double cumulativeTfIdf, int matchedTermsCount) {
+        this.document = document;
         this.documentId = documentId;
-        this.cumulativeTfIdf = 0.0;
-        this.matchedTerms = new HashSet<>();
+        this.cumulativeTfIdf = cumulativeTfIdf;
+        this.matchedTermsCount = matchedTermsCount;
     }
 
-    public void update(double tfIdf, String term) {
+    /**
+     * Add the TF-IDF of one more matched query term; each distinct term must be added once.
+     *
+     * @param tfIdf TF-IDF of the term in this document.
+     */
+    public void update(double tfIdf) {
         this.cumulativeTfIdf += tfIdf;
-        this.matchedTerms.add(term);
+        this.matchedTermsCount++;
+    }
+
+    public int getDocument() {
+        return document;
     }
 
     public String getDocumentId() {
@@ -30,15 +47,15 @@ public class ObjectSearchResult {
     }
 
     public int getMatchedTermsCount() {
-        return matchedTerms.size();
+        return matchedTermsCount;
     }
 
     @Override
     public String toString() {
-        return String.format("Document: %s, Cumulative TF-IDF: %.4f, Matched terms: %d", documentId, cumulativeTfIdf, matchedTerms.size());
+        return String.format("Document: %s, Cumulative TF-IDF: %.4f, Matched terms: %d", documentId, cumulativeTfIdf, matchedTermsCount);
     }
 
-    public static void printResults(Map<String, ? extends ObjectSearchResult> results) {
+    public static void printResults(Collection<? extends ObjectSearchResult> results) {
         if (results.isEmpty()) {
             System.out.println("No results found.");
             return;
@@ -47,7 +64,7 @@ public class ObjectSearchResult {
         System.out.printf("%-15s %-20s %-10s%n", "Document ID", "Cumulative TF-IDF", "Matched Terms");
         System.out.println("-------------------------------------------------------");
 
-        for (ObjectSearchResult result : results.values()) {
+        for (ObjectSearchResult result : results) {
             System.out.printf("%-15s %-20.4f %-10d%n", result.getDocumentId(), result.getCumulativeTfIdf(), result.getMatchedTermsCount());
         }
     }
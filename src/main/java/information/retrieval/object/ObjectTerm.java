@@ -1,15 +1,28 @@
 package information.retrieval.object;
 
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
 public class ObjectTerm implements Comparable<ObjectTerm> {
 
     private final String term;
+    private final NavigableMap<Integer, ObjectDocument> postingList;
     private int documentFrequency;
 
     public ObjectTerm(String term) {
         this.term = term;
+        this.postingList = new TreeMap<>();
         this.documentFrequency = 0;
     }
 
+    public String getTerm() {
+        return term;
+    }
+
+    public NavigableMap<Integer, ObjectDocument> getPostingList() {
+        return postingList;
+    }
+
     public int getDocumentFrequency() {
         return documentFrequency;
     }
@@ -18,6 +31,10 @@ public class ObjectTerm implements Comparable<ObjectTerm> {
         documentFrequency++;
     }
 
+    public void decrementDocumentFrequency() {
+        documentFrequency--;
+    }
+
     @Override
     public int compareTo(ObjectTerm otherTerm) {
         return term.compareTo(otherTerm.term);
@@ -0,0 +1,449 @@
+package information.retrieval.utility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads documents from one large corpus file holding a record per line.
+ * <p>
+ * Two formats are understood, picked by file extension:
+ * <ul>
+ *     <li>{@code .jsonl}: one JSON object per line, with the document ID and text in the {@code id} and
+ *     {@code text} fields (other fields are skipped);</li>
+ *     <li>{@code .tsv}: the document ID, a tab, then the text, with {@code \t}, {@code \n}, {@code \r} and
+ *     {@code \\} escaped.</li>
+ * </ul>
+ * The file is memory-mapped and cut into byte ranges that end on line boundaries. Each range is scanned for
+ * records by its own worker, so the handler is called concurrently and must be thread-safe.
+ */
+public class CorpusReader {
+
+    private static final Logger logger = Logger.getLogger(CorpusReader.class.getName());
+
+    /**
+     * Largest byte range mapped at once; also keeps ranges small enough to spread over the workers evenly.
+     */
+    private static final long MAX_RANGE_BYTES = 64L * 1024 * 1024;
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int ALIGN_BUFFER_BYTES = 64 * 1024;
+
+    private final String idField;
+    private final String textField;
+
+    public CorpusReader() {
+        this("id", "text");
+    }
+
+    /**
+     * @param idField   JSON field holding the document ID.
+     * @param textField JSON field holding the document text.
+     */
+    public CorpusReader(String idField, String textField) {
+        this.idField = idField;
+        this.textField = textField;
+    }
+
+
+    /**
+     * Read every record of a corpus file and pass it to a handler.
+     *
+     * @param corpusPath path to a {@code .jsonl} or {@code .tsv} file.
+     * @param threads    number of workers scanning the file.
+     * @param handler    receives the ID and text of each record, from any worker thread.
+     * @return number of records read, or -1 if the file could not be read.
+     */
+    public long read(String corpusPath, int threads, BiConsumer<String, String> handler) {
+        return read(corpusPath, 0, Long.MAX_VALUE, threads, handler);
+    }
+
+
+    /**
+     * Read the records of a byte range of a corpus file and pass them to a handler.
+     *
+     * @param corpusPath path to a {@code .jsonl} or {@code .tsv} file.
+     * @param start      first byte of the range; must be the start of a line, as returned by {@link #partition}.
+     * @param end        end of the range, exclusive; must be the start of a line or past the end of the file.
+     * @param threads    number of workers scanning the range.
+     * @param handler    receives the ID and text of each record, from any worker thread.
+     * @return number of records read, or -1 if the file could not be read.
+     */
+    public long read(String corpusPath, long start, long end, int threads, BiConsumer<String, String> handler) {
+        Path path = Paths.get(corpusPath);
+        boolean json;
+        if (corpusPath.endsWith(".jsonl")) {
+            json = true;
+        } else if (corpusPath.endsWith(".tsv")) {
+            json = false;
+        } else {
+            logger.severe("Unsupported corpus format, expected .jsonl or .tsv: " + corpusPath);
+            return -1;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] boundaries = splitRanges(channel, start, Math.min(end, channel.size()), Math.max(1, threads));
+            AtomicLong records = new AtomicLong();
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                long rangeStart = boundaries[i];
+                long rangeEnd = boundaries[i + 1];
+                tasks.add(workers.submit(() -> {
+                    records.addAndGet(readRange(channel, rangeStart, rangeEnd, json, handler));
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            return records.get();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading corpus file: " + corpusPath, e);
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Error reading corpus file: " + corpusPath, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+        return -1;
+    }
+
+
+    /**
+     * Cut a corpus file into at most {@code count} byte ranges of about equal size, each starting at the beginning
+     * of a line, for reading by separate processes with {@link #read(String, long, long, int, BiConsumer)}.
+     *
+     * @param corpusPath path to the corpus file.
+     * @param count      number of ranges wanted.
+     * @return range boundaries, starting at 0 and ending at the file size.
+     * @throws IOException if the file cannot be read.
+     */
+    public long[] partition(String corpusPath, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(corpusPath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Long> boundaries = new ArrayList<>();
+            boundaries.add(0L);
+            ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_BYTES);
+            for (int i = 1; i <= count; i++) {
+                long position = nextLineStart(channel, Math.max(1, size * i / count), buffer);
+                if (position > boundaries.get(boundaries.size() - 1)) {
+                    boundaries.add(position);
+                }
+            }
+            return boundaries.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /**
+     * Cut a byte range of the file into ranges of about equal size, each starting at the beginning of a line.
+     *
+     * @param channel open corpus file.
+     * @param start   start of the range, at the beginning of a line.
+     * @param end     end of the range, at the beginning of a line or the end of the file.
+     * @param threads number of workers.
+     * @return range boundaries, starting at {@code start} and ending at {@code end}.
+     */
+    private long[] splitRanges(FileChannel channel, long start, long end, int threads) throws IOException {
+        long size = end - start;
+        long rangeCount = Math.max((long) threads * RANGES_PER_THREAD, (size + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES);
+        long rangeBytes = Math.max(1, Math.min(MAX_RANGE_BYTES, (size + rangeCount - 1) / rangeCount));
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_BYTES);
+        long position = start;
+        while (position < end) {
+            position = Math.min(end, nextLineStart(channel, Math.min(end, position + rangeBytes), buffer));
+            boundaries.add(position);
+        }
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Position of the first line that starts at or after a given position.
+     */
+    private long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+        if (position >= size) {
+            return size;
+        }
+        long scan = position - 1;
+        while (scan < size) {
+            buffer.clear();
+            int read = channel.read(buffer, scan);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return scan + i + 1;
+                }
+            }
+            scan += read;
+        }
+        return size;
+    }
+
+
+    /**
+     * Read the records of one byte range.
+     *
+     * @return number of records read.
+     */
+    private long readRange(FileChannel channel, long start, long end, boolean json,
+                           BiConsumer<String, String> handler) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int length = buffer.limit();
+        byte[] line = new byte[8192];
+        long records = 0;
+
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int lineLength = lineEnd - lineStart;
+            if (lineLength > 0 && buffer.get(lineEnd - 1) == '\r') {
+                lineLength--;
+            }
+
+            if (lineLength > 0) {
+                if (line.length < lineLength) {
+                    line = new byte[Math.max(lineLength, line.length * 2)];
+                }
+                buffer.get(lineStart, line, 0, lineLength);
+                String[] record = json ? parseJson(line, lineLength) : parseTsv(line, lineLength);
+                if (record == null) {
+                    logger.warning("Skipping malformed corpus record at byte " + (start + lineStart));
+                } else {
+                    handler.accept(record[0], record[1]);
+                    records++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return records;
+    }
+
+
+    /**
+     * Split a TSV line into its ID and unescaped text.
+     *
+     * @return ID and text, or null if the line has no tab.
+     */
+    private String[] parseTsv(byte[] line, int length) {
+        int tab = 0;
+        while (tab < length && line[tab] != '\t') {
+            tab++;
+        }
+        if (tab == 0 || tab == length) {
+            return null;
+        }
+        String id = new String(line, 0, tab, StandardCharsets.UTF_8);
+        String text = new String(line, tab + 1, length - tab - 1, StandardCharsets.UTF_8);
+        return new String[]{id, text.indexOf('\\') < 0 ? text : unescapeTsv(text)};
+    }
+
+    private String unescapeTsv(String text) {
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                unescaped.append(c);
+                continue;
+            }
+            char escaped = text.charAt(++i);
+            switch (escaped) {
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                default:
+                    unescaped.append(escaped);
+            }
+        }
+        return unescaped.toString();
+    }
+
+
+    /**
+     * Pull the ID and text fields out of a JSON object line.
+     *
+     * @return ID and text, or null if the line is not an object holding both fields.
+     */
+    private String[] parseJson(byte[] line, int length) {
+        JsonScanner scanner = new JsonScanner(new String(line, 0, length, StandardCharsets.UTF_8));
+        String id = null;
+        String text = null;
+        try {
+            scanner.expect('{');
+            if (!scanner.consume('}')) {
+                do {
+                    String field = scanner.readString();
+                    scanner.expect(':');
+                    if (field.equals(idField)) {
+                        id = scanner.readScalar();
+                    } else if (field.equals(textField)) {
+                        text = scanner.readScalar();
+                    } else {
+                        scanner.skipValue();
+                    }
+                } while (scanner.consume(','));
+                scanner.expect('}');
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return id == null || text == null ? null : new String[]{id, text};
+    }
+
+
+    /**
+     * Minimal JSON reader covering what corpus records need: strings, scalars, and skipping nested values.
+     * Malformed input raises {@link IllegalArgumentException}.
+     */
+    private static class JsonScanner {
+        private final String json;
+        private int position;
+
+        JsonScanner(String json) {
+            this.json = json;
+            this.position = 0;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + position);
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Read a string, number or literal; the latter two are returned as written.
+         */
+        String readScalar() {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == '"') {
+                return readString();
+            }
+            int start = position;
+            while (position < json.length() && ",}] \t".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Expected a value at " + position);
+            }
+            return json.substring(start, position);
+        }
+
+        String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= json.length()) break;
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw new IllegalArgumentException("Truncated escape at " + position);
+                        }
+                        value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+
+        void skipValue() {
+            skipWhitespace();
+            if (position >= json.length()) {
+                throw new IllegalArgumentException("Expected a value at " + position);
+            }
+            char c = json.charAt(position);
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                while (position < json.length()) {
+                    char d = json.charAt(position);
+                    if (d == '"') {
+                        readString();
+                        continue;
+                    }
+                    position++;
+                    if (d == '{' || d == '[') {
+                        depth++;
+                    } else if ((d == '}' || d == ']') && --depth == 0) {
+                        return;
+                    }
+                }
+                throw new IllegalArgumentException("Unterminated value");
+            } else {
+                readScalar();
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
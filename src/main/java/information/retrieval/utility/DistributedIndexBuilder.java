@@ -0,0 +1,292 @@
+package information.retrieval.utility;
+
+import information.retrieval.WordList;
+import information.retrieval.index.SegmentFile;
+import information.retrieval.object.ObjectResources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Builds an off-heap index with several worker processes, so no single JVM has to hold the whole corpus.
+ * <p>
+ * The coordinator splits the files of a documents folder, or the lines of a corpus file, into contiguous
+ * partitions of about equal size and starts one worker JVM per partition, on the coordinator's class path. Each
+ * worker indexes its partition into a local {@link WordList}, writes it as a {@link SegmentFile} and exits; the
+ * coordinator then merges the segments into the index file with global document frequencies and document count.
+ * Workers only need the shared file system, so the same build runs as several local processes for testing.
+ * If a worker fails or the coordinator is interrupted, the workers still running are killed before their build
+ * folder is deleted.
+ * <p>
+ * The class is also the worker's entry point: {@code DistributedIndexBuilder <config> <file list> <segment>} for a
+ * documents folder, or {@code DistributedIndexBuilder <config> <corpus> <start> <end> <segment>} for a byte range
+ * of a corpus file.
+ */
+public class DistributedIndexBuilder {
+
+    private static final Logger logger = Logger.getLogger(DistributedIndexBuilder.class.getName());
+
+    private static final long WORKER_STOP_SECONDS = 10;
+
+    private final Properties config;
+
+    /**
+     * @param config configuration handed to the workers, for the tokenizer, lemmatizer and stopword settings.
+     */
+    public DistributedIndexBuilder(Properties config) {
+        this.config = config;
+    }
+
+
+    /**
+     * Index the files of a folder with worker processes and merge their segments into an index file.
+     * Worker JVM options, such as a heap limit, can be given in {@code build.worker.options}.
+     *
+     * @param documentsPath folder of documents to index.
+     * @param indexFile     destination off-heap index file.
+     * @param workers       number of worker processes.
+     * @return true if the index file was written.
+     */
+    public boolean build(String documentsPath, Path indexFile, int workers) {
+        List<File> files = new ReadFile().listDocuments(documentsPath);
+        if (files.isEmpty()) {
+            logger.log(Level.SEVERE, "No files to index in the folder: " + documentsPath);
+            return false;
+        }
+        List<List<File>> partitions = partition(files, Math.max(1, workers));
+        return build(indexFile, partitions.size(), (workDirectory, i) -> {
+            Path fileList = workDirectory.resolve("partition-" + i + ".txt");
+            List<String> lines = new ArrayList<>(partitions.get(i).size());
+            for (File file : partitions.get(i)) {
+                lines.add(file.getAbsolutePath());
+            }
+            Files.write(fileList, lines, StandardCharsets.UTF_8);
+            return List.of(fileList.toString());
+        }, files.size() + " files");
+    }
+
+
+    /**
+     * Index the records of a corpus file with worker processes, each reading a range of its lines, and merge their
+     * segments into an index file. Documents are numbered in file order within each worker's range.
+     *
+     * @param corpusPath path to a {@code .jsonl} or {@code .tsv} corpus file.
+     * @param indexFile  destination off-heap index file.
+     * @param workers    number of worker processes.
+     * @return true if the index file was written.
+     */
+    public boolean buildCorpus(String corpusPath, Path indexFile, int workers) {
+        long[] boundaries;
+        try {
+            boundaries = new CorpusReader().partition(corpusPath, Math.max(1, workers));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading corpus file: " + corpusPath, e);
+            return false;
+        }
+        if (boundaries.length < 2) {
+            logger.log(Level.SEVERE, "No records to index in the corpus file: " + corpusPath);
+            return false;
+        }
+        String corpus = Paths.get(corpusPath).toAbsolutePath().toString();
+        return build(indexFile, boundaries.length - 1, (workDirectory, i) ->
+                List.of(corpus, Long.toString(boundaries[i]), Long.toString(boundaries[i + 1])), corpusPath);
+    }
+
+
+    private boolean build(Path indexFile, int workers, WorkerInput input, String source) {
+        Path workDirectory = null;
+        List<Process> processes = new ArrayList<>(workers);
+        try {
+            Path parent = indexFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            workDirectory = Files.createTempDirectory(parent, indexFile.getFileName() + ".build");
+            Path configFile = workDirectory.resolve("config.properties");
+            try (OutputStream out = Files.newOutputStream(configFile)) {
+                config.store(out, "Worker configuration");
+            }
+
+            List<Path> segments = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                Path segment = workDirectory.resolve("segment-" + i + ".seg");
+                segments.add(segment);
+                List<String> arguments = new ArrayList<>(input.arguments(workDirectory, i));
+                arguments.add(segment.toString());
+                processes.add(startWorker(configFile, arguments));
+            }
+
+            for (int i = 0; i < processes.size(); i++) {
+                int exitCode = processes.get(i).waitFor();
+                if (exitCode != 0) {
+                    // The other workers are stopped on the way out; their segments would not be used
+                    logger.log(Level.SEVERE, "Index worker " + i + " failed with exit code " + exitCode);
+                    return false;
+                }
+            }
+
+            SegmentFile.merge(segments, indexFile);
+            logger.log(Level.INFO, "Indexed " + source + " with " + workers + " workers.");
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error building index with workers: " + indexFile, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.SEVERE, "Interrupted while waiting for index workers.");
+            return false;
+        } finally {
+            stopWorkers(processes);
+            deleteDirectory(workDirectory);
+        }
+    }
+
+
+    /**
+     * Split files, in order, into at most {@code count} contiguous runs of about equal total size.
+     */
+    private static List<List<File>> partition(List<File> files, int count) {
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        List<List<File>> partitions = new ArrayList<>(count);
+        List<File> current = new ArrayList<>();
+        long seenBytes = 0;
+        for (File file : files) {
+            current.add(file);
+            seenBytes += file.length();
+            // Close the partition once it reaches its share of the bytes seen so far
+            if (partitions.size() < count - 1 && seenBytes * count >= totalBytes * (partitions.size() + 1)) {
+                partitions.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty() || partitions.isEmpty()) {
+            partitions.add(current);
+        }
+        return partitions;
+    }
+
+    private Process startWorker(Path configFile, List<String> arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String options = config.getProperty("build.worker.options", "").trim();
+        if (!options.isEmpty()) {
+            command.addAll(Arrays.asList(options.split("\\s+")));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(DistributedIndexBuilder.class.getName());
+        command.add(configFile.toString());
+        command.addAll(arguments);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    /**
+     * Kill the workers still running and wait for them to exit, so none is writing to the build folder when it is
+     * deleted.
+     */
+    private static void stopWorkers(List<Process> processes) {
+        boolean interrupted = Thread.interrupted();
+        for (Process process : processes) {
+            if (!process.isAlive()) {
+                continue;
+            }
+            process.destroyForcibly();
+            try {
+                if (!process.waitFor(WORKER_STOP_SECONDS, TimeUnit.SECONDS)) {
+                    logger.log(Level.WARNING, "Index worker did not stop: " + process.pid());
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not delete build directory: " + directory, e);
+        }
+    }
+
+
+    /**
+     * Worker entry point: index the files listed in a file, or a byte range of a corpus file, and write them as a
+     * segment.
+     *
+     * @param args configuration file, file listing one document path per line, segment file to write; or
+     *             configuration file, corpus file, start and end of the byte range, segment file to write.
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 && args.length != 5) {
+            System.err.println("Usage: DistributedIndexBuilder <config> <file list> <segment>");
+            System.err.println("       DistributedIndexBuilder <config> <corpus> <start> <end> <segment>");
+            System.exit(2);
+        }
+        ResourceManager resourceManager = new ResourceManager();
+        Properties config = resourceManager.loadConfiguration(args[0]);
+        ObjectResources resources = config == null ? null : resourceManager.initializeResources(config);
+        if (resources == null) {
+            logger.log(Level.SEVERE, "Error initializing resources.");
+            System.exit(1);
+        }
+
+        Path segment = Paths.get(args[args.length - 1]);
+        try {
+            WordList wordList = new WordList();
+            WordProcessor wordProcessor = new WordProcessor(resources.getTokenizer(), resources.getLemmatizer(),
+                    resources.getStopwords());
+            String source;
+            if (args.length == 3) {
+                List<File> files = new ArrayList<>();
+                for (String line : Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                    if (!line.isBlank()) files.add(new File(line));
+                }
+                wordProcessor.processFiles(files, wordList);
+                source = files.size() + " files";
+            } else {
+                // One reading thread keeps the documents in file order and needs only the one tokenizer
+                long records = new CorpusReader().read(args[1], Long.parseLong(args[2]), Long.parseLong(args[3]), 1,
+                        (documentId, content) -> wordList.addTerm(documentId, wordProcessor.processText(content)));
+                if (records < 0) {
+                    System.exit(1);
+                }
+                source = records + " corpus records";
+            }
+            SegmentFile.write(wordList, segment);
+            logger.log(Level.INFO, "Segment written: " + segment + " (" + source + ")");
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error writing segment: " + segment, e);
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Arguments that tell one worker which part of the input to index.
+     */
+    private interface WorkerInput {
+        List<String> arguments(Path workDirectory, int worker) throws IOException;
+    }
+}
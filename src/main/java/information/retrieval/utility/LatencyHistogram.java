@@ -0,0 +1,144 @@
+package information.retrieval.utility;
+
+/**
+ * Histogram of latencies in nanoseconds with bounded relative error.
+ * <p>
+ * Values below 256 get a bucket each; larger values are bucketed by their top eight significant bits, so any
+ * recorded value is reported within 1/128 (under 1%) of its true value. Memory is fixed at a few thousand
+ * counters whatever the range of values.
+ * <p>
+ * Coordinated omission: a client that waits for each response before sending the next request stops sampling
+ * exactly while the system is slow, hiding the delay that requests which should have been sent in the meantime
+ * would have seen. {@link #recordCorrected(long, long)} adds those missing samples back, given the interval at
+ * which requests were meant to be sent.
+ * <p>
+ * Not thread-safe; give each thread its own histogram and {@link #add(LatencyHistogram) add} them up.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+    private double sum;
+
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos latency in nanoseconds; negative values count as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+
+    /**
+     * Record one latency and the latencies that requests due during it would have seen.
+     *
+     * @param nanos            latency in nanoseconds.
+     * @param expectedInterval interval at which requests were meant to be sent, in nanoseconds.
+     */
+    public void recordCorrected(long nanos, long expectedInterval) {
+        record(nanos);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missed = nanos - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+            record(missed);
+        }
+    }
+
+
+    /**
+     * Add the samples of another histogram to this one.
+     *
+     * @param other histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+
+    /**
+     * Copy of this histogram with coordinated omission corrected after the fact, as if every sample had been
+     * recorded with {@link #recordCorrected(long, long)}.
+     *
+     * @param expectedInterval interval at which requests were meant to be sent, in nanoseconds.
+     * @return corrected histogram.
+     */
+    public LatencyHistogram correctedCopy(long expectedInterval) {
+        LatencyHistogram corrected = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = Math.min(highestEquivalent(i), max);
+            for (long n = 0; n < counts[i]; n++) {
+                corrected.recordCorrected(value, expectedInterval);
+            }
+        }
+        return corrected;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+
+    /**
+     * Latency at or below which the given share of samples fall.
+     *
+     * @param percentile percentile between 0 and 100.
+     * @return latency in nanoseconds, 0 for an empty histogram.
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int bucketOf(long value) {
+        int bits = Long.SIZE - Long.numberOfLeadingZeros(value);
+        if (bits <= SUB_BUCKET_BITS + 1) {
+            return (int) value;
+        }
+        int shift = bits - (SUB_BUCKET_BITS + 1);
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long highestEquivalent(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -3,7 +3,11 @@ package information.retrieval.utility;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,22 +48,12 @@ public class ReadFile {
 
             for (File file : files) {
                 if (file.isFile() && file.canRead()) {
-                    String canonicalFilePath = file.getCanonicalPath();
-                    if (!canonicalFilePath.startsWith(canonicalFolderPath)) {
+                    if (!isInsideFolder(file, canonicalFolderPath)) {
                         logger.severe("File path is outside the folder: " + file.getName());
                         continue;
                     }
 
-                    StringBuilder content = new StringBuilder();
-                    try (BufferedReader reader = new BufferedReader(new java.io.FileReader(file))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            content.append(line).append("\n");
-                        }
-                    } catch (IOException e) {
-                        logger.severe("IO Exception while reading file: " + file.getName());
-                    }
-                    contents.put(file.getName(), content.toString());
+                    contents.put(file.getName(), readDocument(file));
                 }
             }
         } catch (IOException e) {
@@ -68,4 +62,69 @@ public class ReadFile {
 
         return contents;
     }
+
+
+    /**
+     * List the readable files in a folder, sorted by name, without reading them
+     *
+     * @param directoryPath path to the folder containing the documents
+     * @return document files; empty if the folder cannot be listed
+     */
+    public List<File> listDocuments(String directoryPath) {
+        File directory = new File(directoryPath);
+        File[] files = directory.listFiles(file -> file.isFile() && file.canRead());
+        if (files == null) {
+            logger.severe("Failed to list files in the folder: " + directoryPath);
+            return new ArrayList<>();
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+
+        List<File> documents = new ArrayList<>(files.length);
+        try {
+            String canonicalFolderPath = directory.getCanonicalPath();
+            for (File file : files) {
+                if (!isInsideFolder(file, canonicalFolderPath)) {
+                    logger.severe("File path is outside the folder: " + file.getName());
+                    continue;
+                }
+                documents.add(file);
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "IO Exception while processing folder: " + directoryPath, e);
+        }
+        return documents;
+    }
+
+
+    /**
+     * Check that a file, with symbolic links resolved, lies inside a folder
+     *
+     * @param file                file in the folder listing
+     * @param canonicalFolderPath canonical path of the folder
+     * @return true if the file's canonical path is under the folder
+     * @throws IOException if the canonical path cannot be resolved
+     */
+    private static boolean isInsideFolder(File file, String canonicalFolderPath) throws IOException {
+        return file.getCanonicalPath().startsWith(canonicalFolderPath + File.separator);
+    }
+
+
+    /**
+     * Read one document, with every line ended by a newline
+     *
+     * @param file document file
+     * @return file contents, as much as could be read
+     */
+    public String readDocument(File file) {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new java.io.FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append("\n");
+            }
+        } catch (IOException e) {
+            logger.severe("IO Exception while reading file: " + file.getName());
+        }
+        return content.toString();
+    }
 }
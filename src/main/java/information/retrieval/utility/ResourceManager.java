@@ -1,5 +1,6 @@
 package information.retrieval.utility;
 
+import information.retrieval.object.ObjectResources;
 import jsastrawi.morphology.DefaultLemmatizer;
 import jsastrawi.morphology.Lemmatizer;
 import opennlp.tools.tokenize.Tokenizer;
@@ -7,9 +8,23 @@ import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
 
 import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,6 +32,13 @@ public class ResourceManager {
 
     private static final Logger logger = Logger.getLogger(ResourceManager.class.getName());
 
+    private static final long CACHE_MAGIC = 0x5049574f52445331L; // "PIWORDS1"
+
+    /**
+     * Name of the only collection when the configuration lists none.
+     */
+    public static final String DEFAULT_COLLECTION = "default";
+
 
     /**
      * Initialize tokenizer.
@@ -25,10 +47,22 @@ public class ResourceManager {
      * @return Tokenizer object.
      */
     public Tokenizer initializeTokenizer(String modelPath) {
+        TokenizerModel model = loadTokenizerModel(modelPath);
+        return model == null ? null : new TokenizerME(model);
+    }
+
+
+    /**
+     * Load tokenizer model. The model is thread-safe and can back one tokenizer per thread.
+     *
+     * @param modelPath Path to tokenizer model.
+     * @return TokenizerModel object.
+     */
+    public TokenizerModel loadTokenizerModel(String modelPath) {
         try (InputStream modelIn = new FileInputStream(modelPath)) {
             TokenizerModel model = new TokenizerModel(modelIn);
             logger.log(Level.INFO, "Tokenizer initialized successfully.");
-            return new TokenizerME(model);
+            return model;
         } catch (FileNotFoundException e) {
             logger.log(Level.SEVERE, "Tokenizer model not found: " + modelPath, e);
         } catch (IOException e) {
@@ -85,6 +119,203 @@ public class ResourceManager {
     }
 
 
+    /**
+     * Initialize lemmatizer from the precompiled dictionary cache, compiling it first if it is missing or stale.
+     *
+     * @param cacheDirectory Directory holding compiled word tables.
+     * @return Lemmatizer object.
+     */
+    public Lemmatizer initializeLemmatizer(Path cacheDirectory) {
+        URL source = Lemmatizer.class.getResource("/root-words.txt");
+        if (source == null) {
+            logger.log(Level.SEVERE, "Lemmatizer dictionary not found on classpath.");
+            return null;
+        }
+        Set<String> dictionary = loadWordSet(source, cacheDirectory.resolve("root-words.bin"), UnaryOperator.identity());
+        if (dictionary == null) {
+            return null;
+        }
+        logger.log(Level.INFO, "Lemmatizer initialized successfully.");
+        return new DefaultLemmatizer(dictionary);
+    }
+
+
+    /**
+     * Load stopwords from the precompiled cache, compiling it first if it is missing or stale.
+     *
+     * @param stopWordsPath  Path to stopwords file.
+     * @param cacheDirectory Directory holding compiled word tables.
+     * @return Set of stopwords.
+     */
+    public Set<String> loadStopWords(String stopWordsPath, Path cacheDirectory) {
+        try {
+            URL source = Paths.get(stopWordsPath).toUri().toURL();
+            Set<String> stopwords = loadWordSet(source, cacheDirectory.resolve("stopwords.bin"), String::trim);
+            if (stopwords != null) {
+                logger.log(Level.INFO, "Stopwords loaded successfully.");
+            }
+            return stopwords;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Invalid stopwords path: " + stopWordsPath, e);
+        }
+        return null;
+    }
+
+
+    /**
+     * Load the tokenizer, lemmatizer and stopwords concurrently.
+     * When {@code cache.path} is set, word lists are read from their compiled form in that directory.
+     *
+     * @param config Configuration containing resource paths.
+     * @return Loaded resources, or null if any of them failed to load.
+     */
+    public ObjectResources initializeResources(Properties config) {
+        String tokenizerPath = config.getProperty("tokenizer.path");
+        String stopwordsPath = config.getProperty("stopwords.path");
+        String cachePath = config.getProperty("cache.path");
+        Path cacheDirectory = cachePath == null ? null : Paths.get(cachePath);
+
+        CompletableFuture<TokenizerModel> tokenizer = CompletableFuture.supplyAsync(() -> loadTokenizerModel(tokenizerPath));
+        CompletableFuture<Lemmatizer> lemmatizer = CompletableFuture.supplyAsync(() -> cacheDirectory == null
+                ? initializeLemmatizer()
+                : initializeLemmatizer(cacheDirectory));
+        CompletableFuture<Set<String>> stopwords = CompletableFuture.supplyAsync(() -> cacheDirectory == null
+                ? loadStopWords(stopwordsPath)
+                : loadStopWords(stopwordsPath, cacheDirectory));
+
+        try {
+            ObjectResources resources = new ObjectResources(tokenizer.join(), lemmatizer.join(), stopwords.join());
+            if (resources.getTokenizer() == null || resources.getLemmatizer() == null || resources.getStopwords() == null) {
+                return null;
+            }
+            return resources;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error initializing resources.", e);
+        }
+        return null;
+    }
+
+
+    /**
+     * Load a word list through its compiled cache file. The cache is keyed by the source's size and modification
+     * time and is rebuilt from the line-based source whenever that stamp changes.
+     * <p>
+     * The words are returned in a heap {@link HashSet}: the lemmatizer and stopword filter probe them for every
+     * token while indexing, and a hash lookup is cheaper than encoding each probe and searching the mapped table.
+     *
+     * @param source     Line-based word list.
+     * @param cacheFile  Compiled table location.
+     * @param normalizer Applied to every source line before it is added.
+     * @return Set of words, or null if the source could not be read.
+     */
+    private Set<String> loadWordSet(URL source, Path cacheFile, UnaryOperator<String> normalizer) {
+        long stamp;
+        try {
+            URLConnection connection = source.openConnection();
+            stamp = connection.getLastModified() * 31 + connection.getContentLengthLong();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Word list not readable: " + source, e);
+            return null;
+        }
+
+        if (Files.isRegularFile(cacheFile)) {
+            try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() >= 2 * Long.BYTES && buffer.getLong() == CACHE_MAGIC && buffer.getLong() == stamp) {
+                    return new HashSet<>(new WordSet(buffer));
+                }
+                logger.log(Level.INFO, "Word list cache is stale: " + cacheFile);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error reading word list cache: " + cacheFile, e);
+            }
+        }
+
+        Set<String> words = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(source.openStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                words.add(normalizer.apply(line));
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error reading word list: " + source, e);
+            return null;
+        }
+
+        ByteBuffer table = WordSet.encode(words);
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeLong(CACHE_MAGIC);
+                out.writeLong(stamp);
+                out.write(table.array(), 0, table.limit());
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.log(Level.INFO, "Word list cache compiled: " + cacheFile);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error writing word list cache: " + cacheFile, e);
+        }
+        return words;
+    }
+
+
+    /**
+     * Names of the collections listed in {@code collections}, in order.
+     *
+     * @param config Configuration.
+     * @return Collection names; a single {@link #DEFAULT_COLLECTION} when none are listed.
+     */
+    public List<String> getCollectionNames(Properties config) {
+        List<String> names = new ArrayList<>();
+        for (String name : config.getProperty("collections", "").split("[,\\s]+")) {
+            if (!name.isEmpty() && !names.contains(name)) {
+                names.add(name);
+            }
+        }
+        if (names.isEmpty()) {
+            names.add(DEFAULT_COLLECTION);
+        }
+        return names;
+    }
+
+
+    /**
+     * Configuration of one named collection. Every {@code collection.<name>.<key>} setting overrides {@code <key>};
+     * other settings, including the shared NLP resource paths, are inherited. Files written per collection
+     * ({@code index.path}, {@code store.path} and {@code journal.path}) that are not overridden get the collection
+     * name as a prefix so collections never share them.
+     *
+     * @param config Configuration.
+     * @param name   Collection name.
+     * @return Configuration of the collection.
+     */
+    public Properties getCollectionConfiguration(Properties config, String name) {
+        Properties collectionConfig = new Properties();
+        String prefix = "collection." + name + ".";
+        for (String key : config.stringPropertyNames()) {
+            if (!key.equals("collections") && !key.startsWith("collection.")) {
+                collectionConfig.setProperty(key, config.getProperty(key));
+            }
+        }
+        if (DEFAULT_COLLECTION.equals(name) && config.getProperty("collections") == null) {
+            return collectionConfig;
+        }
+        for (String key : new String[]{"index.path", "store.path", "journal.path"}) {
+            String path = collectionConfig.getProperty(key);
+            if (path != null) {
+                Path file = Paths.get(path);
+                collectionConfig.setProperty(key, file.resolveSibling(name + "-" + file.getFileName()).toString());
+            }
+        }
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                collectionConfig.setProperty(key.substring(prefix.length()), config.getProperty(key));
+            }
+        }
+        return collectionConfig;
+    }
+
+
     /**
      * Load configuration from file.
      *
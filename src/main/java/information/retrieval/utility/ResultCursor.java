@@ -0,0 +1,300 @@
+package information.retrieval.utility;
+
+import information.retrieval.object.ObjectSearchResult;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * Ranked, paginated view over the hits of one query.
+ * <p>
+ * Hits are held in parallel primitive arrays and kept unordered until a page is asked for. A page is cut out with
+ * quickselect at its two edges and only the page itself is sorted, so reading page {@code p} of size {@code n}
+ * costs linear time in the hit count plus {@code n log n}, instead of a full sort. Selections are remembered as
+ * partition boundaries, and later pages only re-partition the range that is still unordered. Result objects are
+ * only created for the hits of the pages that are read.
+ * <p>
+ * Hits are ranked by score, highest first, then by document number. Cursors that rank by matched terms put hits
+ * matching more distinct query terms first.
+ * <p>
+ * A cursor from a search that hit its deadline holds the hits found until then and reports {@link #isTimedOut()}.
+ * <p>
+ * Methods are synchronized so a cursor can be paged from a background thread while another thread reads its size.
+ */
+public class ResultCursor implements Iterable<ObjectSearchResult> {
+
+    private static final int ITERATOR_PAGE_SIZE = 64;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final ResultCursor EMPTY = new ResultCursor(new int[0], new float[0], new byte[0], false,
+            document -> null);
+    private static final ResultCursor TIMED_OUT = new ResultCursor(new int[0], new float[0], new byte[0], false,
+            document -> null, true);
+
+    private final int[] documents;
+    private final float[] scores;
+    private final byte[] matchedTerms;
+    private final boolean rankByMatchedTerms;
+    private final IntFunction<String> documentIds;
+    private final BitSet boundaries;
+    private final boolean timedOut;
+    private SearchProfile profile;
+
+    /**
+     * @param documents          document numbers of the hits, in any order; the arrays are reordered in place.
+     * @param scores             score of each hit.
+     * @param matchedTerms       number of distinct query terms each hit matched.
+     * @param rankByMatchedTerms rank hits matching more terms before comparing scores.
+     * @param documentIds        resolves document numbers to IDs for the returned results.
+     */
+    public ResultCursor(int[] documents, float[] scores, byte[] matchedTerms, boolean rankByMatchedTerms,
+                        IntFunction<String> documentIds) {
+        this(documents, scores, matchedTerms, rankByMatchedTerms, documentIds, false);
+    }
+
+    /**
+     * @param documents          document numbers of the hits, in any order; the arrays are reordered in place.
+     * @param scores             score of each hit.
+     * @param matchedTerms       number of distinct query terms each hit matched.
+     * @param rankByMatchedTerms rank hits matching more terms before comparing scores.
+     * @param documentIds        resolves document numbers to IDs for the returned results.
+     * @param timedOut           the search stopped at its deadline, so the hits are partial.
+     */
+    public ResultCursor(int[] documents, float[] scores, byte[] matchedTerms, boolean rankByMatchedTerms,
+                        IntFunction<String> documentIds, boolean timedOut) {
+        if (scores.length != documents.length || matchedTerms.length != documents.length) {
+            throw new IllegalArgumentException("hit arrays must have the same length");
+        }
+        this.documents = documents;
+        this.scores = scores;
+        this.matchedTerms = matchedTerms;
+        this.rankByMatchedTerms = rankByMatchedTerms;
+        this.documentIds = documentIds;
+        this.timedOut = timedOut;
+        this.boundaries = new BitSet(documents.length + 1);
+        this.boundaries.set(0);
+        this.boundaries.set(documents.length);
+    }
+
+
+    /**
+     * Cursor without hits.
+     *
+     * @return empty cursor.
+     */
+    public static ResultCursor empty() {
+        return EMPTY;
+    }
+
+    /**
+     * A cursor without hits from a search that ran out of time before it could confirm any.
+     *
+     * @return empty timed-out cursor.
+     */
+    public static ResultCursor timedOut() {
+        return TIMED_OUT;
+    }
+
+
+    /**
+     * Total number of hits.
+     *
+     * @return hit count.
+     */
+    public int size() {
+        return documents.length;
+    }
+
+    public boolean isEmpty() {
+        return documents.length == 0;
+    }
+
+
+    /**
+     * Whether the search stopped at its deadline. The hits are then those found in time, scored on the postings
+     * read before the deadline, and may miss documents or score them lower than a complete search would.
+     *
+     * @return true if the hits are partial.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+
+    /**
+     * Hits at ranks {@code [offset, offset + limit)}, best first.
+     *
+     * @param offset rank of the first hit to return.
+     * @param limit  maximum number of hits to return.
+     * @return hits of the page; empty when the offset is past the last hit.
+     */
+    public synchronized List<ObjectSearchResult> page(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative");
+        }
+        if (offset >= documents.length || limit == 0) {
+            return Collections.emptyList();
+        }
+        int end = (int) Math.min(documents.length, (long) offset + limit);
+
+        if (boundaries.nextClearBit(offset) <= end) {
+            long start = profile == null ? 0 : System.nanoTime();
+            select(offset);
+            select(end);
+            sort(offset, end);
+            boundaries.set(offset, end);
+            if (profile != null) {
+                profile.stage("page", start);
+            }
+        }
+
+        List<ObjectSearchResult> page = new ArrayList<>(end - offset);
+        for (int i = offset; i < end; i++) {
+            page.add(new ObjectSearchResult(documents[i], documentIds.apply(documents[i]), scores[i], matchedTerms[i]));
+        }
+        return Collections.unmodifiableList(page);
+    }
+
+
+    /**
+     * Trace the cost of selecting and sorting pages into a profile from now on.
+     */
+    synchronized void setProfile(SearchProfile profile) {
+        this.profile = profile;
+    }
+
+
+    /**
+     * Iterate all hits in rank order, selecting one page at a time as the iteration advances.
+     */
+    @Override
+    public Iterator<ObjectSearchResult> iterator() {
+        return new Iterator<>() {
+            private int rank = 0;
+            private List<ObjectSearchResult> page = Collections.emptyList();
+            private int pageStart = 0;
+
+            @Override
+            public boolean hasNext() {
+                return rank < documents.length;
+            }
+
+            @Override
+            public ObjectSearchResult next() {
+                if (rank >= documents.length) throw new NoSuchElementException();
+                if (rank >= pageStart + page.size()) {
+                    pageStart = rank;
+                    page = page(rank, ITERATOR_PAGE_SIZE);
+                }
+                return page.get(rank++ - pageStart);
+            }
+        };
+    }
+
+
+    /**
+     * Partition the hits so that the ones ranked before {@code rank} occupy {@code [0, rank)}.
+     *
+     * @param rank partition point.
+     */
+    private void select(int rank) {
+        if (boundaries.get(rank)) {
+            return;
+        }
+        int low = boundaries.previousSetBit(rank);
+        int high = boundaries.nextSetBit(rank) - 1;
+
+        while (low < high) {
+            int store = partition(low, high);
+            boundaries.set(store);
+            boundaries.set(store + 1);
+            if (store == rank) {
+                break;
+            } else if (store < rank) {
+                low = store + 1;
+            } else {
+                high = store - 1;
+            }
+        }
+        boundaries.set(rank);
+    }
+
+    /**
+     * Sort the hits in {@code [low, high)}.
+     */
+    private void sort(int low, int high) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            int pivot = partition(low, high - 1);
+            if (pivot - low < high - pivot) {
+                sort(low, pivot);
+                low = pivot + 1;
+            } else {
+                sort(pivot + 1, high);
+                high = pivot;
+            }
+        }
+        for (int i = low + 1; i < high; i++) {
+            for (int j = i; j > low && compare(j - 1, j) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    /**
+     * Lomuto partition of {@code [low, high]} around a median-of-three pivot.
+     *
+     * @return final position of the pivot.
+     */
+    private int partition(int low, int high) {
+        swap(medianOfThree(low, (low + high) >>> 1, high), high);
+        int store = low;
+        for (int i = low; i < high; i++) {
+            if (compare(i, high) < 0) {
+                swap(i, store++);
+            }
+        }
+        swap(store, high);
+        return store;
+    }
+
+    /**
+     * Rank order of two hits.
+     *
+     * @return negative if hit {@code i} ranks before hit {@code j}.
+     */
+    private int compare(int i, int j) {
+        if (rankByMatchedTerms && matchedTerms[i] != matchedTerms[j]) {
+            return Integer.compare(matchedTerms[j], matchedTerms[i]);
+        }
+        int byScore = Float.compare(scores[j], scores[i]);
+        return byScore != 0 ? byScore : Integer.compare(documents[i], documents[j]);
+    }
+
+    private int medianOfThree(int a, int b, int c) {
+        if (compare(a, b) > 0) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        if (compare(b, c) > 0) {
+            b = c;
+        }
+        return compare(a, b) > 0 ? a : b;
+    }
+
+    private void swap(int i, int j) {
+        int document = documents[i];
+        documents[i] = documents[j];
+        documents[j] = document;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        byte matched = matchedTerms[i];
+        matchedTerms[i] = matchedTerms[j];
+        matchedTerms[j] = matched;
+    }
+}
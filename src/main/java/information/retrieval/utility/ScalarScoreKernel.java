@@ -0,0 +1,32 @@
+package information.retrieval.utility;
+
+/**
+ * Score kernel looping one document at a time.
+ */
+class ScalarScoreKernel implements ScoreKernel {
+
+    @Override
+    public void scatterAdd(float[] scores, int[] documents, float[] weights, int count) {
+        for (int i = 0; i < count; i++) {
+            scores[documents[i]] += weights[i];
+        }
+    }
+
+    @Override
+    public void scatterOr(long[] masks, int[] documents, long bit, int count) {
+        for (int i = 0; i < count; i++) {
+            masks[documents[i]] |= bit;
+        }
+    }
+
+    @Override
+    public int collect(long[] masks, int[] documents) {
+        int count = 0;
+        for (int document = 0; document < masks.length; document++) {
+            if (masks[document] != 0) {
+                documents[count++] = document;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,251 @@
+package information.retrieval.utility;
+
+import information.retrieval.index.PostingList;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Reusable per-thread scratch space for scoring one query at a time.
+ * <p>
+ * Scores and a bitmask of matched query terms are kept in parallel arrays indexed by document number, and sized
+ * to the collection once. Documents touched by a query are listed as they are first hit, so resetting costs time
+ * in the number of hits rather than the collection size. When a query's postings cover a sizable share of the
+ * collection, the touched list is skipped during accumulation and the postings go through the branch-free loops
+ * of {@link ScoreKernel} instead; the hits are then collected with one scan of the masks.
+ * <p>
+ * Usage: {@link #begin(int, long)}, one {@link #add(PostingList, int, float)} per query term, then
+ * {@link #finish()}, and always {@link #reset()} when done, including when the query fails.
+ * <p>
+ * A query may run under a deadline, set with {@link #setDeadline(long)} before the search starts. Postings are
+ * then added only until the deadline passes; the hits scored up to that point are kept and the query is marked
+ * as timed out.
+ * Not thread-safe.
+ */
+class ScoreAccumulator {
+
+    /**
+     * Most distinct terms a query can have; each one owns a bit of the mask.
+     */
+    static final int MAX_TERMS = Long.SIZE;
+
+    /**
+     * Deadline value meaning the query runs to completion.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // Queries scoring at least one posting per this many documents accumulate without tracking touched documents
+    private static final int DENSE_DOCUMENTS_PER_POSTING = 16;
+    private static final int BATCH_SIZE = 256;
+
+    private final ScoreKernel kernel;
+    private final int[] batchDocuments = new int[BATCH_SIZE];
+    private final float[] batchWeights = new float[BATCH_SIZE];
+    private float[] scores = new float[0];
+    private long[] matched = new long[0];
+    private int[] touched = new int[0];
+    private int touchedCount;
+    private boolean dense;
+    private long deadline = NO_DEADLINE;
+    private boolean timedOut;
+    private SearchProfile profile;
+
+    ScoreAccumulator(ScoreKernel kernel) {
+        this.kernel = kernel;
+    }
+
+
+    /**
+     * Start a query.
+     *
+     * @param documentCount number of document numbers in the index.
+     * @param postings      total postings the query will add, used to pick sparse or dense accumulation.
+     */
+    void begin(int documentCount, long postings) {
+        if (scores.length < documentCount) {
+            scores = Arrays.copyOf(scores, documentCount);
+            matched = Arrays.copyOf(matched, documentCount);
+            touched = Arrays.copyOf(touched, documentCount);
+        }
+        touchedCount = 0;
+        dense = postings * DENSE_DOCUMENTS_PER_POSTING >= documentCount;
+        timedOut = false;
+    }
+
+    /**
+     * Start a query that checks the deadline but scores outside this accumulator.
+     */
+    void clearTimedOut() {
+        timedOut = false;
+    }
+
+
+    /**
+     * Set the deadline of the queries run by this thread from now on.
+     *
+     * @param deadline {@link System#nanoTime()} value after which no more postings are read, or
+     *                 {@link #NO_DEADLINE}.
+     */
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    boolean hasDeadline() {
+        return deadline != NO_DEADLINE;
+    }
+
+
+    /**
+     * Check the deadline, remembering that the query timed out once it has passed.
+     *
+     * @return true if the query must stop reading postings.
+     */
+    boolean pastDeadline() {
+        if (!timedOut && deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+
+    /**
+     * Set the profile traced by the queries run by this thread from now on.
+     *
+     * @param profile profile to fill in, or null to stop tracing.
+     */
+    void setProfile(SearchProfile profile) {
+        this.profile = profile;
+    }
+
+    SearchProfile getProfile() {
+        return profile;
+    }
+
+
+    /**
+     * Add the postings of one query term, stopping early if the deadline passes.
+     *
+     * @param postingList postings of the term.
+     * @param term        index of the term in the query, below {@link #MAX_TERMS}.
+     * @param weight      query weight the TF-IDF of each posting is multiplied by.
+     * @return number of postings added.
+     */
+    int add(PostingList postingList, int term, float weight) {
+        long bit = 1L << term;
+        int count;
+        int scanned = 0;
+        for (; (count = postingList.read(batchDocuments, batchWeights)) > 0; scanned += count) {
+            Searching.checkCancelled(scanned);
+            if (pastDeadline()) {
+                break;
+            }
+            if (weight != 1.0f) {
+                for (int i = 0; i < count; i++) {
+                    batchWeights[i] *= weight;
+                }
+            }
+
+            if (dense) {
+                kernel.scatterAdd(scores, batchDocuments, batchWeights, count);
+                kernel.scatterOr(matched, batchDocuments, bit, count);
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                int document = batchDocuments[i];
+                if (matched[document] == 0) {
+                    touched[touchedCount++] = document;
+                }
+                scores[document] += batchWeights[i];
+                matched[document] |= bit;
+            }
+        }
+        return scanned;
+    }
+
+
+    /**
+     * Finish adding postings and list the documents hit.
+     *
+     * @return number of hits.
+     */
+    int finish() {
+        if (dense) {
+            touchedCount = kernel.collect(matched, touched);
+            dense = false;
+        }
+        return touchedCount;
+    }
+
+
+    /**
+     * Multiply the score of every hit by a per-document factor.
+     *
+     * @param factor factor by document number.
+     */
+    void scale(IntToFloatFunction factor) {
+        for (int i = 0; i < touchedCount; i++) {
+            scores[touched[i]] *= factor.apply(touched[i]);
+        }
+    }
+
+
+    /**
+     * Copy the hits into a result cursor. Only the copy outlives the query; result objects are built by the cursor
+     * for the pages that are read. A query that timed out gives a cursor marked as timed out.
+     *
+     * @param excludedDocument   document number to leave out, or -1.
+     * @param rankByMatchedTerms rank hits matching more terms first.
+     * @param documentIds        resolves document numbers to IDs.
+     * @return cursor over the hits.
+     */
+    ResultCursor toCursor(int excludedDocument, boolean rankByMatchedTerms, IntFunction<String> documentIds) {
+        int[] documents = new int[touchedCount];
+        float[] hitScores = new float[touchedCount];
+        byte[] matchedTerms = new byte[touchedCount];
+        int count = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int document = touched[i];
+            if (document == excludedDocument) continue;
+            documents[count] = document;
+            hitScores[count] = scores[document];
+            matchedTerms[count++] = (byte) Long.bitCount(matched[document]);
+        }
+        if (count < touchedCount) {
+            documents = Arrays.copyOf(documents, count);
+            hitScores = Arrays.copyOf(hitScores, count);
+            matchedTerms = Arrays.copyOf(matchedTerms, count);
+        }
+        return new ResultCursor(documents, hitScores, matchedTerms, rankByMatchedTerms, documentIds, timedOut);
+    }
+
+
+    /**
+     * Clear the entries of the documents touched by the last query.
+     * After a dense query that was not finished, the whole arrays are cleared instead.
+     */
+    void reset() {
+        if (dense) {
+            Arrays.fill(scores, 0f);
+            Arrays.fill(matched, 0L);
+            dense = false;
+        } else {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0f;
+                matched[touched[i]] = 0L;
+            }
+        }
+        touchedCount = 0;
+    }
+
+
+    /**
+     * Per-document factor for {@link #scale(IntToFloatFunction)}.
+     */
+    interface IntToFloatFunction {
+        float apply(int document);
+    }
+}
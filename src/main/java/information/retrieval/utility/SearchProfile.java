@@ -0,0 +1,284 @@
+package information.retrieval.utility;
+
+import information.retrieval.index.IndexStorage;
+import information.retrieval.index.PostingList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Trace of one search, filled in when the search runs through {@link Searching#searchProfiled}.
+ * <p>
+ * Records how long each stage took, what every query term was lemmatized to, its document frequency and how many
+ * of its postings were scanned or skipped, and for AND queries how the candidate set shrank at each intersection
+ * step. Paging the returned cursor adds to the {@code page} stage, which is where hits are selected and sorted.
+ * {@link #explain(int)} breaks the score of any document down by query term.
+ * <p>
+ * Searches run without a profile skip all of this.
+ */
+public class SearchProfile {
+
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private final Map<String, TermTrace> terms = new LinkedHashMap<>();
+    private final List<IntersectionStep> intersectionSteps = new ArrayList<>();
+    private int hits;
+    private boolean timedOut;
+
+    private IndexStorage index;
+    private Map<String, Float> queryWeights = Collections.emptyMap();
+    private boolean cosine;
+    private double queryNorm;
+
+
+    /**
+     * Time spent in each stage, in the order stages were first entered.
+     *
+     * @return nanoseconds keyed by stage name.
+     */
+    public Map<String, Long> getStageNanos() {
+        return Collections.unmodifiableMap(stageNanos);
+    }
+
+    /**
+     * Query terms in the order they were first seen, one entry per distinct lemma.
+     *
+     * @return term traces.
+     */
+    public List<TermTrace> getTerms() {
+        return new ArrayList<>(terms.values());
+    }
+
+    public List<IntersectionStep> getIntersectionSteps() {
+        return Collections.unmodifiableList(intersectionSteps);
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+
+    /**
+     * Score of a document for the profiled query, broken down by query term.
+     * The postings of every query term are scanned again, so this is meant for the few documents being inspected.
+     *
+     * @param document document number.
+     * @return contribution of each lemma to the score, and the normalization applied to their sum.
+     */
+    public ScoreBreakdown explain(int document) {
+        Map<String, Double> contributions = new LinkedHashMap<>();
+        double normalization = 1.0;
+        Lock lock = index.readLock();
+        lock.lock();
+        try {
+            for (Map.Entry<String, Float> entry : queryWeights.entrySet()) {
+                PostingList postingList = index.getPostingList(entry.getKey());
+                double tfidf = 0.0;
+                while (postingList != null && postingList.next() && postingList.document() <= document) {
+                    if (postingList.document() == document) {
+                        tfidf = postingList.tfidf();
+                    }
+                }
+                contributions.put(entry.getKey(), tfidf * entry.getValue());
+            }
+            if (cosine) {
+                double documentNorm = index.getDocumentNorm(document);
+                normalization = documentNorm > 0 ? 1.0 / (documentNorm * queryNorm) : 0.0;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new ScoreBreakdown(document, contributions, normalization);
+    }
+
+
+    void stage(String name, long startNanos) {
+        stageNanos.merge(name, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    void term(String term, String lemma) {
+        terms.computeIfAbsent(lemma, key -> new TermTrace(lemma)).inputTerms.add(term);
+    }
+
+    void postings(String lemma, int documentFrequency, long scanned) {
+        TermTrace trace = terms.computeIfAbsent(lemma, TermTrace::new);
+        trace.documentFrequency = documentFrequency;
+        trace.postingsScanned += scanned;
+    }
+
+    void intersectionStep(String lemma, int candidatesBefore, int candidatesAfter) {
+        intersectionSteps.add(new IntersectionStep(lemma, candidatesBefore, candidatesAfter));
+    }
+
+    void scoring(IndexStorage index, Map<String, Float> queryWeights, boolean cosine, double queryNorm) {
+        this.index = index;
+        this.queryWeights = new LinkedHashMap<>(queryWeights);
+        this.cosine = cosine;
+        this.queryNorm = queryNorm;
+    }
+
+    void result(ResultCursor cursor) {
+        this.hits = cursor.size();
+        this.timedOut = cursor.isTimedOut();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Hits: %d%s%n", hits, timedOut ? " (timed out)" : ""));
+
+        report.append(String.format("%-20s %-20s %-10s %-10s %-10s%n", "Term", "Lemma", "DF", "Scanned", "Skipped"));
+        for (TermTrace trace : terms.values()) {
+            report.append(String.format("%-20s %-20s %-10d %-10d %-10d%n", String.join(",", trace.inputTerms),
+                    trace.lemma, trace.documentFrequency, trace.postingsScanned, trace.getPostingsSkipped()));
+        }
+
+        if (!intersectionSteps.isEmpty()) {
+            report.append(String.format("%-20s %-10s %-10s%n", "Intersect", "Before", "After"));
+            for (IntersectionStep step : intersectionSteps) {
+                report.append(String.format("%-20s %-10d %-10d%n", step.lemma, step.candidatesBefore,
+                        step.candidatesAfter));
+            }
+        }
+
+        report.append(String.format("%-20s %-10s", "Stage", "Micros"));
+        for (Map.Entry<String, Long> entry : stageNanos.entrySet()) {
+            report.append(String.format("%n%-20s %-10.1f", entry.getKey(), entry.getValue() / 1000.0));
+        }
+        return report.toString();
+    }
+
+
+    /**
+     * One distinct query lemma.
+     */
+    public static class TermTrace {
+        private final String lemma;
+        private final List<String> inputTerms = new ArrayList<>();
+        private int documentFrequency;
+        private long postingsScanned;
+
+        TermTrace(String lemma) {
+            this.lemma = lemma;
+        }
+
+        public String getLemma() {
+            return lemma;
+        }
+
+        /**
+         * Query terms, as typed, that lemmatized to this lemma; empty for terms taken from a document.
+         */
+        public List<String> getInputTerms() {
+            return Collections.unmodifiableList(inputTerms);
+        }
+
+        /**
+         * Document frequency, 0 if the lemma is not in the index.
+         */
+        public int getDocumentFrequency() {
+            return documentFrequency;
+        }
+
+        public long getPostingsScanned() {
+            return postingsScanned;
+        }
+
+        /**
+         * Postings never read, because scoring skipped straight to the candidates or the search timed out.
+         */
+        public long getPostingsSkipped() {
+            return Math.max(0, documentFrequency - postingsScanned);
+        }
+    }
+
+
+    /**
+     * Candidates before and after intersecting with one more posting list.
+     */
+    public static class IntersectionStep {
+        private final String lemma;
+        private final int candidatesBefore;
+        private final int candidatesAfter;
+
+        IntersectionStep(String lemma, int candidatesBefore, int candidatesAfter) {
+            this.lemma = lemma;
+            this.candidatesBefore = candidatesBefore;
+            this.candidatesAfter = candidatesAfter;
+        }
+
+        public String getLemma() {
+            return lemma;
+        }
+
+        public int getCandidatesBefore() {
+            return candidatesBefore;
+        }
+
+        public int getCandidatesAfter() {
+            return candidatesAfter;
+        }
+    }
+
+
+    /**
+     * How one document's score is built up.
+     */
+    public static class ScoreBreakdown {
+        private final int document;
+        private final Map<String, Double> contributions;
+        private final double normalization;
+
+        ScoreBreakdown(int document, Map<String, Double> contributions, double normalization) {
+            this.document = document;
+            this.contributions = Collections.unmodifiableMap(contributions);
+            this.normalization = normalization;
+        }
+
+        public int getDocument() {
+            return document;
+        }
+
+        /**
+         * TF-IDF of each query lemma in the document times its query weight, 0 for lemmas it does not contain.
+         */
+        public Map<String, Double> getContributions() {
+            return contributions;
+        }
+
+        /**
+         * Factor applied to the sum of contributions: 1, or the inverse vector lengths for cosine queries.
+         */
+        public double getNormalization() {
+            return normalization;
+        }
+
+        public double getScore() {
+            double sum = 0.0;
+            for (double contribution : contributions.values()) {
+                sum += contribution;
+            }
+            return sum * normalization;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            for (Map.Entry<String, Double> entry : contributions.entrySet()) {
+                report.append(String.format("%-20s %.4f%n", entry.getKey(), entry.getValue()));
+            }
+            if (normalization != 1.0) {
+                report.append(String.format("%-20s x %.4f%n", "normalization", normalization));
+            }
+            report.append(String.format("%-20s %.4f", "score", getScore()));
+            return report.toString();
+        }
+    }
+}
@@ -1,96 +1,278 @@
 package information.retrieval.utility;
 
-import information.retrieval.WordList;
-import information.retrieval.object.ObjectDocument;
-import information.retrieval.object.ObjectSearchResult;
-import information.retrieval.object.ObjectTerm;
+import information.retrieval.index.DocumentSet;
+import information.retrieval.index.IndexStorage;
+import information.retrieval.index.PostingList;
 import jsastrawi.morphology.Lemmatizer;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Searching {
 
-    private final WordList wordList;
+    private final IndexStorage index;
     private final Lemmatizer lemmatizer;
+    private final IntFunction<String> documentIds;
+    private final ThreadLocal<ScoreAccumulator> accumulators;
 
     private static final Logger logger = Logger.getLogger(Searching.class.getName());
+    private static final int CANCEL_CHECK_MASK = 0xFFF;
+    private static final ScoreKernel KERNEL = ScoreKernel.create();
 
-    public Searching(WordList wordList, Lemmatizer lemmatizer) {
-        this.wordList = wordList;
+    public Searching(IndexStorage index, Lemmatizer lemmatizer) {
+        this.index = index;
         this.lemmatizer = lemmatizer;
+        this.documentIds = index::getDocumentId;
+        this.accumulators = ThreadLocal.withInitial(() -> new ScoreAccumulator(KERNEL));
     }
 
 
     /**
-     * Search for a single term in the word list.
+     * Run a search asynchronously under a deadline.
+     * <p>
+     * The deadline starts counting when the search is submitted, so time spent queued on the executor counts
+     * against it. Posting traversal checks it cooperatively: once it passes, the search stops reading postings and
+     * completes with the best hits found so far, in a cursor that reports {@link ResultCursor#isTimedOut()}. Terms
+     * with the shortest posting lists are read first, so the partial hits carry the most selective terms. AND and NOT
+     * searches only return documents checked against every term, so one that runs out of time before its last
+     * intersection has no partial hits; one that runs out while scoring returns every hit, scored on the terms read
+     * so far. A search that only starts after its deadline completes at once with an empty timed-out cursor.
+     * <p>
+     * The deadline is kept per thread, like the rest of the query state: only the searches the search function runs
+     * on the thread it is called on observe it. Searches it hands to another thread or executor run without a
+     * deadline, so pass them their own {@code searchAsync} call instead.
      *
-     * @param term The term to search for.
-     * @return A map of document IDs and their corresponding TF-IDF values.
+     * @param search   The search to run, e.g. {@code s -> s.searchOR(terms)}.
+     * @param timeout  Time allowed for the search.
+     * @param unit     Unit of the timeout.
+     * @param executor Executor running the search.
+     * @return A future completed with the cursor, or exceptionally if the search fails.
      */
-    public Map<String, ObjectSearchResult> searchSingleTerm(String term) {
-        String lemmatizedTerm = lemmatizeTerm(term);
-        ObjectTerm objectTerm = new ObjectTerm(lemmatizedTerm);
-        Map<String, ObjectDocument> postingList = wordList.getInvertedIndex().get(objectTerm);
+    public CompletableFuture<ResultCursor> searchAsync(Function<Searching, ResultCursor> search, long timeout,
+                                                       TimeUnit unit, Executor executor) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return CompletableFuture.supplyAsync(() -> {
+            ScoreAccumulator accumulator = accumulators.get();
+            accumulator.setDeadline(deadline);
+            try {
+                return search.apply(this);
+            } finally {
+                accumulator.setDeadline(ScoreAccumulator.NO_DEADLINE);
+            }
+        }, executor);
+    }
 
-        if (postingList == null) {
-            logger.log(Level.INFO, "Term '" + term + "' not found in the word list.");
-            return Collections.emptyMap();
-        }
 
-        Map<String, ObjectSearchResult> results = new HashMap<>();
-        for (Map.Entry<String, ObjectDocument> entry : postingList.entrySet()) {
-            String docId = entry.getKey();
-            double tfidf = entry.getValue().getTfidf();
-            results.put(docId, new ObjectSearchResult(docId));
-            results.get(docId).update(tfidf, lemmatizedTerm);
+    /**
+     * Run a search and trace it into a profile: per-stage timings, each term's lemma, document frequency and
+     * postings scanned or skipped, and the intersection steps of AND queries. The returned cursor keeps adding the
+     * cost of selecting and sorting pages to the profile, and {@link SearchProfile#explain(int)} breaks down the
+     * score of any document.
+     *
+     * @param search  The search to run, e.g. {@code s -> s.searchAND(terms)}.
+     * @param profile Profile to fill in; use a new one per search.
+     * @return The cursor returned by the search.
+     */
+    public ResultCursor searchProfiled(Function<Searching, ResultCursor> search, SearchProfile profile) {
+        ScoreAccumulator accumulator = accumulators.get();
+        accumulator.setProfile(profile);
+        try {
+            long start = System.nanoTime();
+            ResultCursor results = search.apply(this);
+            profile.stage("total", start);
+            profile.result(results);
+            if (!results.isEmpty()) {
+                results.setProfile(profile);
+            }
+            return results;
+        } finally {
+            accumulator.setProfile(null);
         }
+    }
+
 
-        return sortByRankDescending(results);
+    /**
+     * Search for a single term in the word list.
+     *
+     * @param term The term to search for.
+     * @return A cursor over the matching documents, ranked by TF-IDF.
+     */
+    public ResultCursor searchSingleTerm(String term) {
+        return locked(() -> {
+            String lemmatizedTerm = lemmatizeTerm(term);
+
+            if (index.getPostingList(lemmatizedTerm) == null) {
+                logger.log(Level.INFO, "Term '" + term + "' not found in the word list.");
+                return ResultCursor.empty();
+            }
+
+            return searchWeighted(Map.of(lemmatizedTerm, 1.0f), false, -1, false);
+        });
     }
 
 
     /**
      * Search for multiple terms in the word list using "AND" and rank the results.
+     * The terms' document sets are intersected smallest first, so the candidate set only ever shrinks, and only
+     * the surviving candidates are looked up in the posting lists for scoring.
      *
      * @param terms The terms to search for.
-     * @return A map of document IDs and their corresponding cumulative TF-IDF values.
+     * @return A cursor over the documents containing every term, ranked by cumulative TF-IDF.
+     */
+    public ResultCursor searchAND(String[] terms) {
+        return locked(() -> searchBoolean(terms, new String[0]));
+    }
+
+
+    /**
+     * Search for documents containing every term and none of the excluded terms, ranked by the cumulative TF-IDF of
+     * the included terms. Excluded terms that are not indexed exclude nothing.
+     *
+     * @param terms         The terms every result must contain.
+     * @param excludedTerms The terms no result may contain.
+     * @return A cursor over the matching documents.
      */
-    public Map<String, ObjectSearchResult> searchAND(String[] terms) {
-        Map<ObjectTerm, Map<String, ObjectDocument>> invertedIndex = wordList.getInvertedIndex();
+    public ResultCursor searchNOT(String[] terms, String[] excludedTerms) {
+        return locked(() -> searchBoolean(terms, excludedTerms));
+    }
 
-        Set<String> commonDocs = new HashSet<>();
-        Map<String, ObjectSearchResult> results = new HashMap<>();
+
+    /**
+     * Evaluate an AND NOT query on document sets, then score the survivors.
+     * <p>
+     * Dense blocks of the sets are bitmaps, so intersecting or subtracting common terms costs a word operation per
+     * 64 documents rather than a comparison per posting. Scoring then skips through each included term's postings
+     * straight to the candidates.
+     */
+    private ResultCursor searchBoolean(String[] terms, String[] excludedTerms) {
+        if (terms.length == 0) {
+            return ResultCursor.empty();
+        }
+        ScoreAccumulator accumulator = accumulators.get();
+        accumulator.clearTimedOut();
+        if (accumulator.pastDeadline()) {
+            return ResultCursor.timedOut();
+        }
+        SearchProfile profile = accumulator.getProfile();
+        DocumentSet[] documentSets = new DocumentSet[terms.length];
+        String[] lemmas = new String[terms.length];
+        Set<String> distinctTerms = new HashSet<>();
 
         for (int i = 0; i < terms.length; i++) {
-            String lemmatizedterm = lemmatizeTerm(terms[i]);
-            ObjectTerm objectTerm = new ObjectTerm(lemmatizedterm);
-            Map<String, ObjectDocument> postingList = invertedIndex.get(objectTerm);
+            String lemmatizedTerm = lemmatizeTerm(terms[i]);
+            long lookupStart = profile == null ? 0 : System.nanoTime();
+            documentSets[i] = index.getDocumentSet(lemmatizedTerm);
+            lemmas[i] = lemmatizedTerm;
+            distinctTerms.add(lemmatizedTerm);
+            if (profile != null) {
+                profile.stage("lookup", lookupStart);
+                profile.postings(lemmatizedTerm, documentSets[i] == null ? 0 : documentSets[i].cardinality(), 0);
+            }
 
-            if (postingList == null) {
+            if (documentSets[i] == null) {
                 logger.log(Level.INFO, "Term '" + terms[i] + "' not found in the word list.");
-                return Collections.emptyMap();
+                return ResultCursor.empty();
             }
+        }
 
-            if (i == 0) {
-                commonDocs.addAll(postingList.keySet());
-            } else {
-                commonDocs.retainAll(postingList.keySet());
+        DocumentSet excluded = DocumentSet.empty();
+        List<String> excludedLemmas = new ArrayList<>();
+        for (String term : excludedTerms) {
+            String lemmatizedTerm = lemmatizeTerm(term);
+            DocumentSet documentSet = index.getDocumentSet(lemmatizedTerm);
+            if (profile != null) {
+                profile.postings(lemmatizedTerm, documentSet == null ? 0 : documentSet.cardinality(), 0);
             }
-            
-            if (commonDocs.isEmpty()) {
-                logger.log(Level.INFO, "No documents found for terms containing all terms.");
-                return Collections.emptyMap();
+            if (documentSet != null) {
+                excluded = excluded.or(documentSet);
+                excludedLemmas.add(lemmatizedTerm);
             }
+        }
 
-            for (String docId : commonDocs) {
-                double tfidf = postingList.get(docId).getTfidf();
-                results.computeIfAbsent(docId, ObjectSearchResult::new).update(tfidf, lemmatizedterm);
+        Integer[] order = new Integer[terms.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> documentSets[i].cardinality()));
+        long intersectStart = profile == null ? 0 : System.nanoTime();
+
+        DocumentSet candidates = documentSets[order[0]];
+        for (int step = 1; step < order.length && !candidates.isEmpty(); step++) {
+            if (accumulator.pastDeadline()) {
+                // Candidates not yet checked against every term are not hits
+                if (profile != null) {
+                    profile.stage("intersect", intersectStart);
+                }
+                return ResultCursor.timedOut();
+            }
+            DocumentSet next = candidates.and(documentSets[order[step]]);
+            if (profile != null) {
+                profile.intersectionStep(lemmas[order[step]], candidates.cardinality(), next.cardinality());
             }
+            candidates = next;
+        }
+        if (!excluded.isEmpty() && !candidates.isEmpty()) {
+            DocumentSet next = candidates.andNot(excluded);
+            if (profile != null) {
+                profile.intersectionStep("-" + String.join("|", excludedLemmas), candidates.cardinality(),
+                        next.cardinality());
+            }
+            candidates = next;
+        }
+        if (profile != null) {
+            profile.stage("intersect", intersectStart);
+        }
+
+        long scoreStart = profile == null ? 0 : System.nanoTime();
+        int[] commonDocs = candidates.toArray();
+        float[] scores = new float[commonDocs.length];
+        for (int step = 0; step < order.length && commonDocs.length > 0 && !accumulator.pastDeadline(); step++) {
+            PostingList postingList = index.getPostingList(lemmas[order[step]]);
+            boolean positioned = false;
+            for (int i = 0; i < commonDocs.length; i++) {
+                checkCancelled(i);
+                if ((i & CANCEL_CHECK_MASK) == 0 && accumulator.pastDeadline()) {
+                    // Every candidate is a hit; those not reached yet miss this term's weight
+                    break;
+                }
+                if (!positioned || postingList.document() < commonDocs[i]) {
+                    if (!postingList.advance(commonDocs[i])) break;
+                    positioned = true;
+                }
+                if (postingList.document() == commonDocs[i]) {
+                    scores[i] += (float) postingList.tfidf();
+                }
+            }
+            if (profile != null) {
+                profile.postings(lemmas[order[step]], postingList.size(), postingList.postingsRead());
+            }
+        }
+        if (profile != null) {
+            profile.stage("score", scoreStart);
+            Map<String, Float> queryWeights = new LinkedHashMap<>();
+            for (String lemma : lemmas) {
+                queryWeights.merge(lemma, 1.0f, Float::sum);
+            }
+            profile.scoring(index, queryWeights, false, 0.0);
+        }
+
+        if (commonDocs.length == 0) {
+            logger.log(Level.INFO, "No documents found for terms containing all terms.");
+            return ResultCursor.empty();
         }
 
-        return sortByRankDescending(results);
+        byte[] matchedTerms = new byte[commonDocs.length];
+        Arrays.fill(matchedTerms, (byte) distinctTerms.size());
+        return new ResultCursor(commonDocs, scores, matchedTerms, false, documentIds, accumulator.isTimedOut());
     }
 
 
@@ -98,26 +280,14 @@ public class Searching {
      * Search for multiple terms in the word list using "OR" and return the results.
      *
      * @param terms The terms to search for.
-     * @return A map of document IDs and their corresponding TF-IDF values.
+     * @return A cursor over the documents containing any term, ranked by cumulative TF-IDF.
      */
-    public Map<String, ObjectSearchResult> searchOR(String[] terms) {
-        Map<ObjectTerm, Map<String, ObjectDocument>> invertedIndex = wordList.getInvertedIndex();
-        Map<String, ObjectSearchResult> results = new HashMap<>();
-
+    public ResultCursor searchOR(String[] terms) {
+        Map<String, Float> queryTerms = new LinkedHashMap<>();
         for (String term : terms) {
-            String lemmatizedTerm = lemmatizeTerm(term);
-            ObjectTerm objectTerm = new ObjectTerm(lemmatizedTerm);
-            Map<String, ObjectDocument> postingList = invertedIndex.get(objectTerm);
-
-            if (postingList == null) continue;
-
-            for (Map.Entry<String, ObjectDocument> entry : postingList.entrySet()) {
-                String docId = entry.getKey();
-                double tfidf = entry.getValue().getTfidf();
-                results.computeIfAbsent(docId, ObjectSearchResult::new).update(tfidf, lemmatizedTerm);
-            }
+            queryTerms.merge(lemmatizeTerm(term), 1.0f, Float::sum);
         }
-        return sortByRankDescending(results);
+        return locked(() -> searchWeighted(queryTerms, false, -1, false));
     }
 
 
@@ -125,65 +295,191 @@ public class Searching {
      * Search for multiple terms in the word list using "AND" and "OR" and return the results.
      *
      * @param terms The terms to search for.
-     * @return A map of document IDs and their corresponding TF-IDF values.
+     * @return A cursor over the documents containing any term, ranked by matched terms and then cumulative TF-IDF.
      */
-    public Map<String, ObjectSearchResult> searchAdvanced(String[] terms) {
-        Map<ObjectTerm, Map<String, ObjectDocument>> invertedIndex = wordList.getInvertedIndex();
+    public ResultCursor searchAdvanced(String[] terms) {
+        return locked(() -> {
+            Map<String, Float> queryTerms = new LinkedHashMap<>();
+            Set<String> missingTerms = new HashSet<>();
+
+            for (String term : terms) {
+                String lemmatizedTerm = lemmatizeTerm(term);
+                if (index.getPostingList(lemmatizedTerm) == null) {
+                    missingTerms.add(term);
+                } else {
+                    queryTerms.merge(lemmatizedTerm, 1.0f, Float::sum);
+                }
+            }
 
-        Map<String, ObjectSearchResult> results = new HashMap<>();
-        Set<String> missingTerms = new HashSet<>();
+            if (!missingTerms.isEmpty()) {
+                logger.log(Level.INFO, "The following terms were not found in the search: " + missingTerms);
+            }
 
-        for (String term : terms) {
-            String lemmatizedTerm = lemmatizeTerm(term);
-            ObjectTerm objectTerm = new ObjectTerm(lemmatizedTerm);
-            Map<String, ObjectDocument> postingList = invertedIndex.get(objectTerm);
+            return searchWeighted(queryTerms, true, -1, false);
+        });
+    }
 
-            if (postingList == null) {
-                missingTerms.add(term);
-            } else {
-                for (Map.Entry<String, ObjectDocument> entry : postingList.entrySet()) {
-                    String docId = entry.getKey();
-                    double tfidf = entry.getValue().getTfidf();
 
-                    results.computeIfAbsent(docId, ObjectSearchResult::new).update(tfidf, lemmatizedTerm);
-                }
+    /**
+     * Search for multiple terms using "OR" and rank by cosine similarity between the query and each document.
+     * Query terms are weighted by IDF. Document norms are precomputed by the index, so length normalization costs
+     * a single division per hit.
+     *
+     * @param terms The terms to search for.
+     * @return A cursor over the documents containing any term, ranked by cosine similarity.
+     */
+    public ResultCursor searchCosine(String[] terms) {
+        return locked(() -> {
+            Map<String, Float> queryVector = new LinkedHashMap<>();
+            for (String term : terms) {
+                String lemmatizedTerm = lemmatizeTerm(term);
+                PostingList postingList = index.getPostingList(lemmatizedTerm);
+                if (postingList == null) continue;
+
+                double idf = Math.log10((double) index.getTotalDocuments() / postingList.size());
+                queryVector.merge(lemmatizedTerm, (float) idf, Float::sum);
+            }
+            return searchWeighted(queryVector, false, -1, true);
+        });
+    }
+
+
+    /**
+     * Find documents similar to a given one, using its highest-weighted terms as a cosine query.
+     *
+     * @param document The document number to match.
+     * @return A cursor over similar documents, ranked by cosine similarity, without the document itself.
+     */
+    public ResultCursor searchMoreLikeThis(int document) {
+        return locked(() -> {
+            Map<String, Double> topTerms = index.getTopTerms(document);
+            if (topTerms.isEmpty()) {
+                logger.log(Level.INFO, "Document " + document + " has no indexed terms.");
+                return ResultCursor.empty();
             }
-        }
 
-        List<ObjectSearchResult> sortedResults = new ArrayList<>(results.values());
-        sortedResults.sort((r1, r2) -> {
-            int termComparison = Integer.compare(r2.getMatchedTermsCount(), r1.getMatchedTermsCount());
-            return termComparison != 0 ? termComparison : Double.compare(r2.getCumulativeTfIdf(), r1.getCumulativeTfIdf());
+            Map<String, Float> queryVector = new LinkedHashMap<>();
+            for (Map.Entry<String, Double> entry : topTerms.entrySet()) {
+                queryVector.put(entry.getKey(), entry.getValue().floatValue());
+            }
+            return searchWeighted(queryVector, false, document, true);
         });
+    }
 
-        Map<String, ObjectSearchResult> sortedResultsMap = new LinkedHashMap<>();
-        for (ObjectSearchResult result : sortedResults) {
-            sortedResultsMap.put(result.getDocumentId(), result);
+
+    /**
+     * Score every document containing any of the query terms, summing the TF-IDF of each term times its query
+     * weight. Scores go into this thread's {@link ScoreAccumulator}, so no per-document objects are created.
+     *
+     * @param queryTerms         Query weight by distinct lemmatized term; terms missing from the index are skipped.
+     * @param rankByMatchedTerms Rank documents matching more terms first.
+     * @param excludedDocument   Document number to leave out of the results, or -1.
+     * @param cosine             Normalize scores by the document and query vector lengths.
+     * @return A cursor over the matching documents.
+     */
+    private ResultCursor searchWeighted(Map<String, Float> queryTerms, boolean rankByMatchedTerms,
+                                        int excludedDocument, boolean cosine) {
+        ScoreAccumulator accumulator = accumulators.get();
+        SearchProfile profile = accumulator.getProfile();
+        long lookupStart = profile == null ? 0 : System.nanoTime();
+        List<PostingList> postingLists = new ArrayList<>(queryTerms.size());
+        List<String> lemmas = new ArrayList<>(queryTerms.size());
+        float[] weights = new float[Math.min(queryTerms.size(), ScoreAccumulator.MAX_TERMS)];
+        long postings = 0;
+        double queryNormSquare = 0.0;
+
+        for (Map.Entry<String, Float> entry : queryTerms.entrySet()) {
+            PostingList postingList = index.getPostingList(entry.getKey());
+            if (postingList == null) continue;
+            if (postingLists.size() == ScoreAccumulator.MAX_TERMS) {
+                logger.log(Level.WARNING, "Query has more than " + ScoreAccumulator.MAX_TERMS
+                        + " distinct terms; ignoring the rest.");
+                break;
+            }
+
+            weights[postingLists.size()] = entry.getValue();
+            postingLists.add(postingList);
+            lemmas.add(entry.getKey());
+            postings += postingList.size();
+            queryNormSquare += entry.getValue() * entry.getValue();
+        }
+
+        if (profile != null) {
+            profile.stage("lookup", lookupStart);
+            for (int term = 0; term < postingLists.size(); term++) {
+                profile.postings(lemmas.get(term), postingLists.get(term).size(), 0);
+            }
+            profile.scoring(index, queryTerms, cosine, Math.sqrt(queryNormSquare));
         }
 
-        if (!missingTerms.isEmpty()) {
-            System.out.println("The following terms were not found in the search: " + missingTerms);
+        accumulator.begin(index.getDocumentCount(), postings);
+        try {
+            long scoreStart = profile == null ? 0 : System.nanoTime();
+            Integer[] order = new Integer[postingLists.size()];
+            for (int term = 0; term < order.length; term++) {
+                order[term] = term;
+            }
+            if (accumulator.hasDeadline()) {
+                // Read the most selective terms first, so a search cut short still has their contribution
+                Arrays.sort(order, Comparator.comparingInt(term -> postingLists.get(term).size()));
+            }
+            for (int term : order) {
+                if (accumulator.pastDeadline()) break;
+                int scanned = accumulator.add(postingLists.get(term), term, weights[term]);
+                if (profile != null) {
+                    profile.postings(lemmas.get(term), postingLists.get(term).size(), scanned);
+                }
+            }
+            if (profile != null) {
+                profile.stage("score", scoreStart);
+            }
+            long collectStart = profile == null ? 0 : System.nanoTime();
+            accumulator.finish();
+
+            if (cosine) {
+                double queryNorm = Math.sqrt(queryNormSquare);
+                accumulator.scale(document -> {
+                    double documentNorm = index.getDocumentNorm(document);
+                    return documentNorm > 0 ? (float) (1.0 / (documentNorm * queryNorm)) : 0.0f;
+                });
+            }
+            ResultCursor results = accumulator.toCursor(excludedDocument, rankByMatchedTerms, documentIds);
+            if (profile != null) {
+                profile.stage("collect", collectStart);
+            }
+            return results;
+        } finally {
+            accumulator.reset();
         }
+    }
 
-        return sortedResultsMap;
+
+    /**
+     * Run a search under the index's read lock, so an update to a live index cannot change the postings or the
+     * document count while the search reads them. Result cursors hold document numbers only, so they stay valid
+     * after the lock is released.
+     */
+    private ResultCursor locked(Supplier<ResultCursor> search) {
+        Lock lock = index.readLock();
+        lock.lock();
+        try {
+            return search.get();
+        } finally {
+            lock.unlock();
+        }
     }
 
 
     /**
-     * Sort a map by value in descending order.
+     * Abort the search when the calling thread has been interrupted, e.g. because the query was superseded.
+     * The flag is only polled every few thousand postings to keep the check off the hot path.
      *
-     * @param unsortedResults The unsorted map.
-     * @return The sorted map.
+     * @param postings Postings processed so far by the calling loop.
      */
-    private Map<String, ObjectSearchResult> sortByRankDescending(Map<String, ObjectSearchResult> unsortedResults) {
-        List<Map.Entry<String, ObjectSearchResult>> sortedEntries = new ArrayList<>(unsortedResults.entrySet());
-        sortedEntries.sort((e1, e2) -> Double.compare(e2.getValue().getCumulativeTfIdf(), e1.getValue().getCumulativeTfIdf()));
-
-        Map<String, ObjectSearchResult> sortedMap = new LinkedHashMap<>();
-        for (Map.Entry<String, ObjectSearchResult> entry : sortedEntries) {
-            sortedMap.put(entry.getKey(), entry.getValue());
+    static void checkCancelled(int postings) {
+        if ((postings & CANCEL_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled");
         }
-        return sortedMap;
     }
 
 
@@ -194,6 +490,14 @@ public class Searching {
      * @return The lemmatized term.
      */
     private String lemmatizeTerm(String term) {
-        return lemmatizer.lemmatize(term.toLowerCase());
+        SearchProfile profile = accumulators.get().getProfile();
+        if (profile == null) {
+            return lemmatizer.lemmatize(term.toLowerCase());
+        }
+        long start = System.nanoTime();
+        String lemma = lemmatizer.lemmatize(term.toLowerCase());
+        profile.stage("lemmatize", start);
+        profile.term(term, lemma);
+        return lemma;
     }
 }
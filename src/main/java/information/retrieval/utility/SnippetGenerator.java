@@ -0,0 +1,116 @@
+package information.retrieval.utility;
+
+import jsastrawi.morphology.Lemmatizer;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Build short highlighted extracts of stored documents around the query terms.
+ * <p>
+ * Matching happens on lemmas, so an inflected word in the text is highlighted for its root in the query.
+ * Not thread-safe, because the OpenNLP tokenizer is not; use one generator per thread.
+ */
+public class SnippetGenerator {
+
+    private static final int MAX_SCANNED_CHARS = 20_000;
+
+    private final Tokenizer tokenizer;
+    private final Lemmatizer lemmatizer;
+    private final int windowSize;
+
+    public SnippetGenerator(Tokenizer tokenizer, Lemmatizer lemmatizer, int windowSize) {
+        this.tokenizer = tokenizer;
+        this.lemmatizer = lemmatizer;
+        this.windowSize = windowSize;
+    }
+
+
+    /**
+     * Pick the window of tokens with the most query matches and highlight the matches.
+     *
+     * @param text       stored document text.
+     * @param queryTerms query terms as typed.
+     * @return HTML fragment with matches wrapped in {@code <b>}, or an empty string if there is no text.
+     */
+    public String generate(String text, String[] queryTerms) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        Set<String> queryLemmas = new HashSet<>();
+        for (String term : queryTerms) {
+            String lowerCase = term.toLowerCase();
+            queryLemmas.add(lowerCase);
+            queryLemmas.add(lemmatizer.lemmatize(lowerCase));
+        }
+
+        String scanned = text.length() > MAX_SCANNED_CHARS ? text.substring(0, MAX_SCANNED_CHARS) : text;
+        Span[] spans = tokenizer.tokenizePos(scanned);
+        if (spans.length == 0) {
+            return "";
+        }
+
+        boolean[] matched = new boolean[spans.length];
+        Map<String, Boolean> matchedTokens = new HashMap<>();
+        for (int i = 0; i < spans.length; i++) {
+            String token = scanned.substring(spans[i].getStart(), spans[i].getEnd()).toLowerCase();
+            matched[i] = matchedTokens.computeIfAbsent(token,
+                    t -> queryLemmas.contains(t) || queryLemmas.contains(lemmatizer.lemmatize(t)));
+        }
+
+        int bestStart = 0;
+        int bestCount = 0;
+        int count = 0;
+        for (int i = 0; i < spans.length; i++) {
+            if (matched[i]) count++;
+            if (i >= windowSize && matched[i - windowSize]) count--;
+            if (count > bestCount) {
+                bestCount = count;
+                bestStart = Math.max(0, i - windowSize + 1);
+            }
+        }
+        if (bestCount > 0) {
+            int first = bestStart;
+            while (!matched[first]) first++;
+            int last = Math.min(spans.length, bestStart + windowSize) - 1;
+            while (!matched[last]) last--;
+            bestStart = Math.max(0, Math.min((first + last - windowSize) / 2 + 1, spans.length - windowSize));
+        }
+        int end = Math.min(spans.length, bestStart + windowSize);
+
+        StringBuilder snippet = new StringBuilder();
+        if (bestStart > 0) {
+            snippet.append("&hellip;");
+        }
+        for (int i = bestStart; i < end; i++) {
+            if (i > bestStart) {
+                appendEscaped(snippet, scanned, spans[i - 1].getEnd(), spans[i].getStart());
+            }
+            if (matched[i]) snippet.append("<b>");
+            appendEscaped(snippet, scanned, spans[i].getStart(), spans[i].getEnd());
+            if (matched[i]) snippet.append("</b>");
+        }
+        if (end < spans.length || scanned.length() < text.length()) {
+            snippet.append("&hellip;");
+        }
+        return snippet.toString();
+    }
+
+    private static void appendEscaped(StringBuilder out, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '\n', '\r', '\t' -> out.append(' ');
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -1,24 +1,41 @@
 package information.retrieval.utility;
 
-import information.retrieval.WordList;
+import information.retrieval.index.DocumentStore;
+import information.retrieval.index.IndexBuilder;
 import jsastrawi.morphology.Lemmatizer;
 import opennlp.tools.tokenize.Tokenizer;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class WordProcessor {
 
     private static final Logger logger = Logger.getLogger(WordProcessor.class.getName());
-    private final Tokenizer tokenizer;
+    private final ThreadLocal<Tokenizer> tokenizer;
     private final Lemmatizer lemmatizer;
     private final Set<String> stopwords;
 
+    /**
+     * Word processor sharing one tokenizer; only for use from a single thread.
+     */
     public WordProcessor(Tokenizer tokenizer, Lemmatizer lemmatizer, Set<String> stopwords) {
-        this.tokenizer = tokenizer;
+        this(() -> tokenizer, lemmatizer, stopwords);
+    }
+
+    /**
+     * Word processor that gives every thread its own tokenizer, so texts can be processed in parallel.
+     *
+     * @param tokenizerFactory creates a tokenizer for each thread that processes text
+     */
+    public WordProcessor(Supplier<Tokenizer> tokenizerFactory, Lemmatizer lemmatizer, Set<String> stopwords) {
+        this.tokenizer = ThreadLocal.withInitial(tokenizerFactory);
         this.lemmatizer = lemmatizer;
         this.stopwords = stopwords;
     }
@@ -31,7 +48,7 @@ public class WordProcessor {
      * @return array of processed tokens
      */
     public String[] processText(String text) {
-        String[] tokens = tokenizer.tokenize(text);
+        String[] tokens = tokenizer.get().tokenize(text);
 
         return Arrays.stream(tokens)
                 .map(String::toLowerCase)
@@ -42,12 +59,24 @@ public class WordProcessor {
 
 
     /**
-     * Process documents in a folder by reading the files and adding the terms to the word list
+     * Process documents in a folder by reading the files and adding the terms to the index
      *
      * @param folderPath path to the folder containing the documents
-     * @param wordList   word list to add the terms to
+     * @param index      index to add the terms to
      */
-    public void processDocuments(String folderPath, WordList wordList) {
+    public void processDocuments(String folderPath, IndexBuilder index) {
+        processDocuments(folderPath, index, null);
+    }
+
+
+    /**
+     * Process documents in a folder and keep their text in a document store for snippets
+     *
+     * @param folderPath path to the folder containing the documents
+     * @param index      index to add the terms to
+     * @param store      document store receiving the raw text, or null to keep no text
+     */
+    public void processDocuments(String folderPath, IndexBuilder index, DocumentStore.Writer store) {
         ReadFile readFile = new ReadFile();
         Map<String, String> fileContents = readFile.ReadDocuments(folderPath);
 
@@ -57,13 +86,57 @@ public class WordProcessor {
         }
 
         for (Map.Entry<String, String> entry : fileContents.entrySet()) {
-            String fileName = entry.getKey();
-            if (fileName.endsWith(".txt")) {
-                fileName = fileName.substring(0, fileName.length() - 4);
+            addDocument(documentId(entry.getKey()), entry.getValue(), index, store);
+        }
+    }
+
+
+    /**
+     * Process the given document files, one at a time and in order
+     *
+     * @param files    document files
+     * @param index    index to add the terms to
+     */
+    public void processFiles(List<File> files, IndexBuilder index) {
+        ReadFile readFile = new ReadFile();
+        for (File file : files) {
+            addDocument(documentId(file.getName()), readFile.readDocument(file), index, null);
+        }
+    }
+
+
+    /**
+     * Process the records of one large corpus file in parallel, a byte range per worker thread.
+     * Requires a word processor created with a tokenizer factory when more than one thread is used.
+     *
+     * @param corpusPath path to a {@code .jsonl} or {@code .tsv} corpus file
+     * @param index      index to add the terms to
+     * @param store      document store receiving the raw text, or null to keep no text
+     * @param threads    number of worker threads
+     */
+    public void processCorpus(String corpusPath, IndexBuilder index, DocumentStore.Writer store, int threads) {
+        long records = new CorpusReader().read(corpusPath, threads,
+                (documentId, content) -> addDocument(documentId, content, index, store));
+        if (records == 0) {
+            logger.log(Level.INFO, "No records found in the corpus file.");
+        } else if (records > 0) {
+            logger.log(Level.INFO, "Processed " + records + " corpus records.");
+        }
+    }
+
+    private static String documentId(String fileName) {
+        return fileName.endsWith(".txt") ? fileName.substring(0, fileName.length() - 4) : fileName;
+    }
+
+    private void addDocument(String documentId, String content, IndexBuilder index, DocumentStore.Writer store) {
+        String[] tokens = processText(content);
+        int document = index.addTerm(documentId, tokens);
+        if (store != null && document >= 0) {
+            try {
+                store.add(document, content);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error storing text of document: " + documentId, e);
             }
-            String content = entry.getValue();
-            String[] tokens = processText(content);
-            wordList.addTerm(fileName, tokens);
         }
     }
 }
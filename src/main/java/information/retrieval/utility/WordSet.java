@@ -0,0 +1,186 @@
+package information.retrieval.utility;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of words stored as a sorted table of UTF-8 bytes.
+ * <p>
+ * Table layout: {@code int count}, {@code int[count + 1]} end-exclusive offsets into the byte area, then the
+ * concatenated UTF-8 bytes of every word in {@link #ORDER}. The table can be read straight out of a mapped file,
+ * so a lookup costs a binary search over the buffer and never materializes the dictionary as Java objects.
+ */
+public class WordSet extends AbstractSet<String> {
+
+    /**
+     * Code point order, which is the same as the unsigned byte order of the UTF-8 encoding.
+     */
+    public static final Comparator<String> ORDER = WordSet::compareCodePoints;
+
+    private final ByteBuffer table;
+    private final int size;
+    private final int bytesStart;
+
+    /**
+     * Wrap an encoded table. The buffer is read from its current position and is not modified.
+     *
+     * @param table buffer positioned at the start of an encoded table.
+     */
+    public WordSet(ByteBuffer table) {
+        this.table = table.slice().order(ByteOrder.BIG_ENDIAN);
+        this.size = this.table.getInt(0);
+        this.bytesStart = Integer.BYTES * (size + 2);
+    }
+
+
+    /**
+     * Encode words into a table. Duplicates are dropped.
+     *
+     * @param words words to encode.
+     * @return heap buffer holding the table, positioned at zero.
+     */
+    public static ByteBuffer encode(Collection<String> words) {
+        List<String> sorted = new ArrayList<>(words);
+        sorted.sort(ORDER);
+
+        List<byte[]> encoded = new ArrayList<>(sorted.size());
+        int totalBytes = 0;
+        String previous = null;
+        for (String word : sorted) {
+            if (word.equals(previous)) continue;
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            totalBytes += bytes.length;
+            previous = word;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * (encoded.size() + 2) + totalBytes);
+        buffer.putInt(encoded.size());
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] bytes : encoded) {
+            offset += bytes.length;
+            buffer.putInt(offset);
+        }
+        for (byte[] bytes : encoded) {
+            buffer.put(bytes);
+        }
+        return buffer.flip();
+    }
+
+
+    /**
+     * Number of bytes an encoded table occupies, read from the front of the table.
+     *
+     * @return table length in bytes.
+     */
+    public int byteSize() {
+        return bytesStart + offset(size);
+    }
+
+
+    /**
+     * Find the position of a word in the table.
+     *
+     * @param word word to look up.
+     * @return index of the word, or {@code -1} if it is not in the set.
+     */
+    public int indexOf(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Decode the word at a position.
+     *
+     * @param index index of the word.
+     * @return decoded word.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int start = offset(index);
+        byte[] bytes = new byte[offset(index + 1) - start];
+        table.get(bytesStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && indexOf((String) o) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (next >= size) throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    private int offset(int index) {
+        return table.getInt(Integer.BYTES * (index + 1));
+    }
+
+    private int compareAt(int index, byte[] key) {
+        int start = bytesStart + offset(index);
+        int length = offset(index + 1) - offset(index);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(table.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    }
+}
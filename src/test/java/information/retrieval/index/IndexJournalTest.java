@@ -0,0 +1,176 @@
+package information.retrieval.index;
+
+import information.retrieval.WordList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexJournalTest {
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void replaysChangesAfterReopen() throws IOException {
+        String live;
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            journal.addDocument("d1", new String[]{"a", "b", "a"});
+            journal.addDocument("d2", new String[]{"b", "c"});
+            journal.replaceDocument("d1", new String[]{"c"});
+            journal.removeDocument("d2");
+            journal.addDocument("d3", new String[]{"a"});
+            live = dump(journal.getWordList());
+        }
+
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            assertEquals(live, dump(journal.getWordList()));
+            assertEquals(2, journal.getWordList().getTotalDocuments());
+            assertNull(journal.getWordList().getPostingList("b"));
+        }
+    }
+
+
+    @Test
+    void truncatesAtRecordWithBadChecksum() throws IOException {
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            journal.addDocument("d1", new String[]{"a"});
+            journal.addDocument("d2", new String[]{"b"});
+        }
+        Path log = directory.resolve("changes.log");
+        long size = Files.size(log);
+        flipLastByte(log);
+
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            assertEquals(1, journal.getWordList().getTotalDocuments());
+            assertNull(journal.getWordList().getPostingList("b"));
+            assertTrue(Files.size(log) < size);
+            journal.addDocument("d3", new String[]{"c"});
+        }
+
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            assertEquals(2, journal.getWordList().getTotalDocuments());
+            assertEquals(1, journal.getWordList().getPostingList("c").size());
+        }
+    }
+
+
+    @Test
+    void truncatesIncompleteRecord() throws IOException {
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            journal.addDocument("d1", new String[]{"a"});
+            journal.addDocument("d2", new String[]{"b"});
+        }
+        Path log = directory.resolve("changes.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            assertEquals(1, journal.getWordList().getTotalDocuments());
+            assertEquals("d1", journal.getWordList().getDocumentId(0));
+        }
+    }
+
+
+    @Test
+    void checkpointsWhileChangesAreAppended() throws Exception {
+        String live;
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int writer = 0; writer < 4; writer++) {
+                int id = writer;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            journal.addDocument(id + "-" + i, new String[]{"t" + (i % 5), "w" + id});
+                            if (i % 4 == 0) {
+                                journal.replaceDocument(id + "-" + (i / 2), new String[]{"r"});
+                            }
+                            if (i % 7 == 0) {
+                                journal.removeDocument(((id + 1) % 4) + "-" + i);
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20; i++) {
+                        journal.checkpoint();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            live = dump(journal.getWordList());
+        }
+
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            assertEquals(live, dump(journal.getWordList()));
+        }
+    }
+
+
+    @Test
+    void keepsStringsLongerThan64KiB() throws IOException {
+        String documentId = "d".repeat(70_000);
+        String token = "t".repeat(100_000);
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            journal.addDocument(documentId, new String[]{token});
+            journal.checkpoint();
+            journal.addDocument("d2", new String[]{token});
+        }
+
+        try (IndexJournal journal = IndexJournal.open(directory)) {
+            assertEquals(documentId, journal.getWordList().getDocumentId(0));
+            assertEquals(2, journal.getWordList().getPostingList(token).size());
+        }
+    }
+
+
+    /**
+     * Document numbers, IDs and postings of a word list, for comparing a restored one with the live one.
+     */
+    private static String dump(WordList wordList) {
+        StringBuilder dump = new StringBuilder();
+        for (int document = 0; document < wordList.getDocumentCount(); document++) {
+            dump.append(document).append('=').append(wordList.getDocumentId(document)).append('\n');
+        }
+        for (String term : wordList.getTerms()) {
+            PostingList postings = wordList.getPostingList(term);
+            dump.append(term).append(':');
+            while (postings.next()) {
+                dump.append(' ').append(postings.document()).append('x').append(postings.termFrequency());
+            }
+            dump.append('\n');
+        }
+        return dump.toString();
+    }
+
+    private static void flipLastByte(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(file, bytes);
+    }
+}
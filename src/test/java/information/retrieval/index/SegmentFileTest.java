@@ -0,0 +1,72 @@
+package information.retrieval.index;
+
+import information.retrieval.WordList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentFileTest {
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void mergesInSeveralPassesLikeInOne() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (int segment = 0; segment < 11; segment++) {
+            WordList wordList = new WordList();
+            for (int document = 0; document < 3; document++) {
+                int n = 3 * segment + document;
+                wordList.addTerm("d" + n, new String[]{"t" + n % 4, "t" + n % 7, "s" + segment, "all"});
+            }
+            if (segment == 5) {
+                wordList.removeDocument("d16");
+            }
+            Path file = directory.resolve("segment-" + segment + ".seg");
+            SegmentFile.write(wordList, file);
+            segments.add(file);
+        }
+
+        Path onePass = directory.resolve("one.bin");
+        Path severalPasses = directory.resolve("several.bin");
+        SegmentFile.merge(segments, onePass);
+        SegmentFile.merge(segments, severalPasses, 2);
+
+        OffHeapIndex actual = OffHeapIndex.open(severalPasses);
+        assertEquals(32, actual.getTotalDocuments());
+        assertEquals(dump(OffHeapIndex.open(onePass)), dump(actual));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(segments.size() + 2, files.count());
+        }
+    }
+
+
+    /**
+     * Document IDs, postings and weights of an index, for comparing two indexes.
+     */
+    private static String dump(IndexStorage index) {
+        StringBuilder dump = new StringBuilder();
+        for (int document = 0; document < index.getDocumentCount(); document++) {
+            dump.append(document).append('=').append(index.getDocumentId(document)).append('\n');
+        }
+        for (String term : index.getTerms()) {
+            PostingList postings = index.getPostingList(term);
+            dump.append(term).append(':');
+            while (postings.next()) {
+                dump.append(' ').append(postings.document()).append('x').append(postings.termFrequency())
+                        .append('=').append(postings.tfidf());
+            }
+            dump.append('\n');
+        }
+        return dump.toString();
+    }
+}
@@ -0,0 +1,179 @@
+package information.retrieval.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void replaysOnlyRecordsAfterCheckpoint() throws IOException {
+        Path file = directory.resolve("test.log");
+        try (WriteAheadLog log = WriteAheadLog.open(file, 0, payload -> { })) {
+            for (byte i = 1; i <= 3; i++) {
+                log.awaitDurable(log.append(new byte[]{i}));
+            }
+        }
+
+        List<byte[]> replayed = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(file, 1, replayed::add)) {
+            assertEquals(3, log.getLastSequence());
+        }
+        assertEquals(2, replayed.size());
+        assertArrayEquals(new byte[]{2}, replayed.get(0));
+        assertArrayEquals(new byte[]{3}, replayed.get(1));
+    }
+
+
+    @Test
+    void removesRecordsOfFailedBatch() throws IOException {
+        Path file = directory.resolve("test.log");
+        FailingChannel channel = new FailingChannel(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        WriteAheadLog log = WriteAheadLog.open(channel, file, 0, payload -> { });
+        log.awaitDurable(log.append(new byte[]{1}));
+        long durableSize = channel.size();
+
+        channel.failNextForce = true;
+        long failed = log.append(new byte[]{2});
+        assertThrows(IOException.class, () -> log.awaitDurable(failed));
+        assertEquals(durableSize, channel.size());
+        // A failed log accepts no more records, and closing it reports the failure again
+        long later = log.append(new byte[]{3});
+        assertThrows(IOException.class, () -> log.awaitDurable(later));
+        assertThrows(IOException.class, log::close);
+
+        List<byte[]> replayed = new ArrayList<>();
+        try (WriteAheadLog reopened = WriteAheadLog.open(file, 0, replayed::add)) {
+            assertEquals(1, reopened.getLastSequence());
+        }
+        assertEquals(durableSize, Files.size(file));
+        assertEquals(1, replayed.size());
+        assertArrayEquals(new byte[]{1}, replayed.get(0));
+    }
+
+
+    /**
+     * File channel whose next {@link #force(boolean)} fails on demand, after the data has been written.
+     */
+    private static class FailingChannel extends FileChannel {
+
+        private final FileChannel channel;
+        volatile boolean failNextForce;
+
+        FailingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failNextForce) {
+                failNextForce = false;
+                throw new IOException("Simulated device error");
+            }
+            channel.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}